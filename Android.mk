@@ -16,3 +16,5 @@ LOCAL_STATIC_JAVA_LIBRARIES := \
     com.iwedia.dtv.framework.service
 
 include $(BUILD_PACKAGE)
+
+include $(call all-makefiles-under,$(LOCAL_PATH))
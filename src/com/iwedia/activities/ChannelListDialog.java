@@ -13,6 +13,7 @@ package com.iwedia.activities;
 import android.app.Dialog;
 import android.graphics.PixelFormat;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.view.Window;
@@ -23,6 +24,7 @@ import android.widget.GridView;
 
 import com.iwedia.adapters.ChannelListAdapter;
 import com.iwedia.dtv.DVBManager;
+import com.iwedia.dtv.ZapStatistics;
 import com.iwedia.dtv.types.InternalException;
 import com.iwedia.epg.R;
 
@@ -70,8 +72,9 @@ public class ChannelListDialog extends Dialog implements OnItemClickListener {
     @Override
     public void show() {
         super.show();
+        mDVBManager.validateServiceList();
         mChannelList.setAdapter(new ChannelListAdapter(mActivity, mDVBManager
-                .getChannelNames()));
+                .getChannelNames(), mDVBManager));
         mChannelList.setSelection(mDVBManager.getCurrentChannelNumber());
     }
 
@@ -84,6 +87,8 @@ public class ChannelListDialog extends Dialog implements OnItemClickListener {
 
     @Override
     public void onItemClick(AdapterView<?> parent, View v, int position, long id) {
+        mDVBManager.getZapStatistics().keyPressed(SystemClock.uptimeMillis(),
+                ZapStatistics.PATH_CHANNEL_LIST);
         try {
             cancel();
             mActivity.showChannelInfo(mDVBManager
@@ -10,25 +10,49 @@
  */
 package com.iwedia.activities;
 
+import android.app.AlertDialog;
+import android.app.Dialog;
 import android.app.ProgressDialog;
+import android.content.DialogInterface;
 import android.os.Bundle;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.AdapterView;
+import android.widget.AdapterView.OnItemClickListener;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.PopupMenu;
 import android.widget.PopupMenu.OnMenuItemClickListener;
+import android.widget.Toast;
 
 import com.iwedia.adapters.FragmentTabAdapter;
 import com.iwedia.adapters.ListViewChannelsAdapter;
 import com.iwedia.dtv.DVBManager;
 import com.iwedia.dtv.DVBManager.OnLoadFinishedListener;
+import com.iwedia.dtv.EpgEventFormatter;
+import com.iwedia.dtv.EpgFilter;
+import com.iwedia.dtv.EpgGrid;
+import com.iwedia.dtv.EpgSearchIndex;
+import com.iwedia.dtv.EpgState;
+import com.iwedia.dtv.TimeEventHolder;
 import com.iwedia.dtv.epg.EpgEventGenre;
+import com.iwedia.dtv.types.InternalException;
 import com.iwedia.epg.R;
 
 import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * EPGActivity - Show current EPG events of all channels for 24h.
@@ -36,16 +60,58 @@ import java.text.ParseException;
 public class EPGActivity extends DTVActivity implements OnMenuItemClickListener {
     private final String TAG = "ActivityEPG";
     public static final String FRAGMRENT_ARGUMENT_KEY_TIME = "time";
-    public static final int HOURS = 24;
+    public static final int HOURS = EpgGrid.HOURS;
     /** Fragment Bundle Argument Keys */
     private FragmentTabAdapter mAdapterActivityEPGFragmentTab = null;
     private ListViewChannelsAdapter mAdapterActivityEPGListViewChannels = null;
     private ProgressDialog mProgressDialog;
     private PopupMenu mPopup;
+    /** Genre menu items and genres they select. */
+    private static final int[] GENRE_MENU_IDS = { R.id.menu_genre_all,
+            R.id.menu_genre_movie, R.id.menu_genre_news, R.id.menu_genre_show,
+            R.id.menu_genre_sports, R.id.menu_genre_children,
+            R.id.menu_genre_music, R.id.menu_genre_culture,
+            R.id.menu_genre_politic, R.id.menu_genre_science,
+            R.id.menu_genre_hobbies };
+    private static final EpgEventGenre[] GENRES = { EpgEventGenre.GENRE_ALL,
+            EpgEventGenre.MOVIE_DRAMA, EpgEventGenre.NEWS_CURRENT_AFFAIRS,
+            EpgEventGenre.SHOW_GAME_SHOW, EpgEventGenre.SPORTS,
+            EpgEventGenre.CHILDREN_YOUTH_PROGRAMMES,
+            EpgEventGenre.MUSIC_BALLET_DANCE, EpgEventGenre.ARTS_CULTURE,
+            EpgEventGenre.SOCIAL_POLITICAL_ISSUES_ECONOMICS,
+            EpgEventGenre.EDUCATION_SCIENCE_FACTUAL_TOPICS,
+            EpgEventGenre.LEISURE_HOBBIES };
+    /** Parental menu items and age limits they select. */
+    private static final int[] PARENTAL_MENU_IDS = { R.id.menu_parental_all,
+            R.id.menu_parental_7, R.id.menu_parental_12, R.id.menu_parental_16 };
+    private static final int[] PARENTAL_RATES = { EpgFilter.PARENTAL_RATE_ALL,
+            7, 12, 16 };
+    /** Maximum number of shown search results. */
+    private static final int MAX_SEARCH_HITS = 50;
+    /** Search starts when typing pauses for this long. */
+    private static final int SEARCH_DELAY_MILLIS = 300;
+    private static final SimpleDateFormat sSearchTimeFormat =
+            new SimpleDateFormat("HH:mm");
+    private Dialog mSearchDialog = null;
+    private ArrayList<EpgSearchIndex.Hit> mSearchHits =
+            new ArrayList<EpgSearchIndex.Hit>();
+    private final Handler mSearchHandler = new Handler();
+    /** Searches run here, index can be busy with acquired rows. */
+    private final ExecutorService mSearchExecutor = Executors
+            .newSingleThreadExecutor();
+    /** Search waiting for typing to pause. */
+    private Runnable mPendingSearch = null;
+    /** Latest query, results of older queries are dropped. */
+    private String mSearchQuery = null;
     private OnLoadFinishedListener mOnLoadFinishedListener = new OnLoadFinishedListener() {
         @Override
-        public void onLoadFinished(String date) {
-            mAdapterActivityEPGFragmentTab.notifyAdapters(date);
+        public void onLoadFinished(String date, EpgState state) {
+            mAdapterActivityEPGFragmentTab.notifyAdapters(date, state);
+        }
+
+        @Override
+        public void onRowsLoaded(String date, EpgState state, BitSet channels) {
+            mAdapterActivityEPGFragmentTab.notifyRows(date, state, channels);
         }
     };
 
@@ -53,6 +119,19 @@ public class EPGActivity extends DTVActivity implements OnMenuItemClickListener
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.epg_activity);
+        /** Language change recreates activity, labels are looked up again. */
+        TimeEventHolder.setFormatter(new EpgEventFormatter(
+                new EpgEventFormatter.Labels() {
+                    @Override
+                    public String getGenreLabel(int genreCode) {
+                        return getEPGGenre(genreCode);
+                    }
+
+                    @Override
+                    public String getRatingLabel(int rate) {
+                        return getParentalRating(rate);
+                    }
+                }));
         mDVBManager.setLoadFinishedListener(mOnLoadFinishedListener);
         mAdapterActivityEPGFragmentTab = new FragmentTabAdapter(this);
         for (int i = 0; i < HOURS; i++) {
@@ -67,10 +146,19 @@ public class EPGActivity extends DTVActivity implements OnMenuItemClickListener
         /** Initialzie progress dialog */
         mProgressDialog = new ProgressDialog(this);
         mProgressDialog.setTitle(R.string.progress_info);
+        /** Stored events are shown until live events are loaded */
+        mDVBManager.setEpgSnapshotDirectory(getFilesDir());
         /** Load EPG events initially */
         mDVBManager.reLoadEvents();
     }
 
+    @Override
+    protected void onDestroy() {
+        mSearchHandler.removeCallbacksAndMessages(null);
+        mSearchExecutor.shutdownNow();
+        super.onDestroy();
+    }
+
     /** Listener for menu button click */
     public void onClickMenu(View v) {
         // openOptionsMenu();
@@ -85,126 +173,204 @@ public class EPGActivity extends DTVActivity implements OnMenuItemClickListener
             inflater.inflate(R.menu.epg_genre, mPopup.getMenu());
         }
         /**
-         * Set active genre state.
+         * Set active filter state.
          */
-        /** ALL */
-        MenuItem checkable = mPopup.getMenu().findItem(R.id.menu_genre_all);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.GENRE_ALL ? true
-                        : false);
-        /** CHILDREN */
-        checkable = mPopup.getMenu().findItem(R.id.menu_genre_children);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.CHILDREN_YOUTH_PROGRAMMES ? true
-                        : false);
-        /** CULTURE */
-        checkable = mPopup.getMenu().findItem(R.id.menu_genre_culture);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.ARTS_CULTURE ? true
-                        : false);
-        /** HOBBIES */
-        checkable = mPopup.getMenu().findItem(R.id.menu_genre_hobbies);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.LEISURE_HOBBIES ? true
-                        : false);
-        /** MOVIES */
-        checkable = mPopup.getMenu().findItem(R.id.menu_genre_movie);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.MOVIE_DRAMA ? true
-                        : false);
-        /** MUSIC */
-        checkable = mPopup.getMenu().findItem(R.id.menu_genre_music);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.MUSIC_BALLET_DANCE ? true
-                        : false);
-        /** NEWS */
-        checkable = mPopup.getMenu().findItem(R.id.menu_genre_news);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.NEWS_CURRENT_AFFAIRS ? true
-                        : false);
-        /** POLITIC */
-        checkable = mPopup.getMenu().findItem(R.id.menu_genre_politic);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.SOCIAL_POLITICAL_ISSUES_ECONOMICS ? true
-                        : false);
-        /** SCIENCE */
-        checkable = mPopup.getMenu().findItem(R.id.menu_genre_science);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.EDUCATION_SCIENCE_FACTUAL_TOPICS ? true
-                        : false);
-        /** SHOW */
-        checkable = mPopup.getMenu().findItem(R.id.menu_genre_show);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.SHOW_GAME_SHOW ? true
-                        : false);
-        /** SPORTS */
-        checkable = mPopup.getMenu().findItem(R.id.menu_genre_sports);
-        checkable
-                .setChecked(mDVBManager.getActiveGenre() == EpgEventGenre.SPORTS ? true
-                        : false);
+        EpgFilter lFilter = mDVBManager.getEpgFilter();
+        for (int i = 0; i < GENRE_MENU_IDS.length; i++) {
+            mPopup.getMenu().findItem(GENRE_MENU_IDS[i])
+                    .setChecked(lFilter.hasGenre(GENRES[i]));
+        }
+        for (int i = 0; i < PARENTAL_MENU_IDS.length; i++) {
+            mPopup.getMenu()
+                    .findItem(PARENTAL_MENU_IDS[i])
+                    .setChecked(
+                            lFilter.getMaxParentalRate() == PARENTAL_RATES[i]);
+        }
         mPopup.show();
     }
 
     @Override
     public boolean onMenuItemClick(final MenuItem item) {
-        /** Handle item selection. */
-        if (!item.isChecked()) {
-            item.setChecked(true);
+        if (item.getItemId() == R.id.menu_search) {
+            showSearchDialog();
+            return true;
         }
-        switch (item.getItemId()) {
-            case R.id.menu_genre_all: {
-                mDVBManager.setGenreFilter(EpgEventGenre.GENRE_ALL);
-                break;
-            }
-            case R.id.menu_genre_children: {
-                mDVBManager
-                        .setGenreFilter(EpgEventGenre.CHILDREN_YOUTH_PROGRAMMES);
-                break;
-            }
-            case R.id.menu_genre_culture: {
-                mDVBManager.setGenreFilter(EpgEventGenre.ARTS_CULTURE);
-                break;
+        /** Handle item selection, genres can be combined. */
+        EpgFilter lFilter = mDVBManager.getEpgFilter();
+        for (int i = 0; i < GENRE_MENU_IDS.length; i++) {
+            if (item.getItemId() == GENRE_MENU_IDS[i]) {
+                mDVBManager.setEpgFilter(lFilter.withGenre(GENRES[i],
+                        !lFilter.hasGenre(GENRES[i])));
+                return true;
             }
-            case R.id.menu_genre_hobbies: {
-                mDVBManager.setGenreFilter(EpgEventGenre.LEISURE_HOBBIES);
-                break;
-            }
-            case R.id.menu_genre_movie: {
-                mDVBManager.setGenreFilter(EpgEventGenre.MOVIE_DRAMA);
-                break;
-            }
-            case R.id.menu_genre_music: {
-                mDVBManager.setGenreFilter(EpgEventGenre.MUSIC_BALLET_DANCE);
-                break;
-            }
-            case R.id.menu_genre_news: {
-                mDVBManager.setGenreFilter(EpgEventGenre.NEWS_CURRENT_AFFAIRS);
-                break;
-            }
-            case R.id.menu_genre_politic: {
-                mDVBManager
-                        .setGenreFilter(EpgEventGenre.SOCIAL_POLITICAL_ISSUES_ECONOMICS);
-                break;
-            }
-            case R.id.menu_genre_science: {
-                mDVBManager
-                        .setGenreFilter(EpgEventGenre.EDUCATION_SCIENCE_FACTUAL_TOPICS);
-                break;
-            }
-            case R.id.menu_genre_show: {
-                mDVBManager.setGenreFilter(EpgEventGenre.SHOW_GAME_SHOW);
-                break;
+        }
+        for (int i = 0; i < PARENTAL_MENU_IDS.length; i++) {
+            if (item.getItemId() == PARENTAL_MENU_IDS[i]) {
+                mDVBManager.setEpgFilter(lFilter
+                        .withMaxParentalRate(PARENTAL_RATES[i]));
+                return true;
             }
-            case R.id.menu_genre_sports: {
-                mDVBManager.setGenreFilter(EpgEventGenre.SPORTS);
-                break;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Show dialog where events are searched while user types.
+     */
+    private void showSearchDialog() {
+        if (mSearchDialog == null) {
+            mSearchDialog = new Dialog(this);
+            mSearchDialog.setTitle(R.string.search_epg);
+            mSearchDialog.setContentView(R.layout.epg_search_dialog);
+            final ArrayList<String> lChannelNames = mDVBManager
+                    .getChannelNames();
+            final ArrayAdapter<String> lAdapter = new ArrayAdapter<String>(
+                    this, android.R.layout.simple_list_item_1);
+            ListView lListView = (ListView) mSearchDialog
+                    .findViewById(R.id.listview_epg_search);
+            lListView.setAdapter(lAdapter);
+            lListView.setOnItemClickListener(new OnItemClickListener() {
+                @Override
+                public void onItemClick(AdapterView<?> parent, View view,
+                        int position, long id) {
+                    showSearchHitDialog(mSearchHits.get(position));
+                }
+            });
+            ((EditText) mSearchDialog.findViewById(R.id.edittext_epg_search))
+                    .addTextChangedListener(new TextWatcher() {
+                        @Override
+                        public void beforeTextChanged(CharSequence s,
+                                int start, int count, int after) {
+                        }
+
+                        @Override
+                        public void onTextChanged(CharSequence s, int start,
+                                int before, int count) {
+                        }
+
+                        @Override
+                        public void afterTextChanged(Editable s) {
+                            requestSearch(s.toString(), lChannelNames,
+                                    lAdapter);
+                        }
+                    });
+        }
+        mSearchDialog.show();
+    }
+
+    /**
+     * Search loaded events when typing pauses and show results. Search runs
+     * off UI thread, a newer query replaces a waiting or running one.
+     * 
+     * @param query
+     *        Text typed by user.
+     * @param channelNames
+     *        Names of channels by row.
+     * @param adapter
+     *        Adapter of result list.
+     */
+    private void requestSearch(final String query,
+            final ArrayList<String> channelNames,
+            final ArrayAdapter<String> adapter) {
+        mSearchQuery = query;
+        if (mPendingSearch != null) {
+            mSearchHandler.removeCallbacks(mPendingSearch);
+        }
+        mPendingSearch = new Runnable() {
+            @Override
+            public void run() {
+                mPendingSearch = null;
+                mSearchExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final ArrayList<EpgSearchIndex.Hit> lHits = mDVBManager
+                                .searchEpgEvents(query, MAX_SEARCH_HITS);
+                        mSearchHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (query.equals(mSearchQuery)) {
+                                    showSearchHits(lHits, channelNames,
+                                            adapter);
+                                }
+                            }
+                        });
+                    }
+                });
             }
-            default:
-                return super.onOptionsItemSelected(item);
+        };
+        mSearchHandler.postDelayed(mPendingSearch, SEARCH_DELAY_MILLIS);
+    }
+
+    /**
+     * Show results of a search.
+     * 
+     * @param hits
+     *        Found events.
+     * @param channelNames
+     *        Names of channels by row.
+     * @param adapter
+     *        Adapter of result list.
+     */
+    private void showSearchHits(ArrayList<EpgSearchIndex.Hit> hits,
+            ArrayList<String> channelNames, ArrayAdapter<String> adapter) {
+        mSearchHits = hits;
+        adapter.clear();
+        for (EpgSearchIndex.Hit hit : mSearchHits) {
+            String lChannelName = hit.getChannel() < channelNames.size()
+                    ? channelNames.get(hit.getChannel()) : "";
+            adapter.add(sSearchTimeFormat.format(new Date(hit
+                    .getBeginMinute() * 60000L))
+                    + "  "
+                    + lChannelName
+                    + "  "
+                    + hit.getName());
+        }
+    }
+
+    /**
+     * Let user jump to or record a found event.
+     */
+    private void showSearchHitDialog(final EpgSearchIndex.Hit hit) {
+        AlertDialog.Builder lBuilder = new AlertDialog.Builder(this);
+        lBuilder.setTitle(hit.getName());
+        lBuilder.setItems(new CharSequence[] { getString(R.string.search_show),
+                getString(R.string.create_smart_record) },
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (which == 0) {
+                            mSearchDialog.dismiss();
+                            showSearchHit(hit);
+                        } else {
+                            recordSearchHit(hit);
+                        }
+                    }
+                });
+        lBuilder.show();
+    }
+
+    private void showSearchHit(EpgSearchIndex.Hit hit) {
+        EpgGrid lGrid = mDVBManager.getLoadedEpgEvents();
+        int lHour = 0;
+        if (lGrid != null) {
+            lHour = lGrid.getHourAt(hit.getBeginMinute());
+        }
+        mAdapterActivityEPGFragmentTab.showEvent(hit.getChannel(), lHour);
+    }
+
+    private void recordSearchHit(EpgSearchIndex.Hit hit) {
+        try {
+            mDVBManager.createSmartRecord(mDVBManager
+                    .getSmartCreateParams(hit));
+            Toast.makeText(this, R.string.smart_record_created,
+                    Toast.LENGTH_SHORT).show();
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        } catch (InternalException e) {
+            e.printStackTrace();
+            Toast.makeText(this, R.string.create_record_failed,
+                    Toast.LENGTH_SHORT).show();
         }
-        mProgressDialog.show();
-        mDVBManager.reLoadEvents();
-        return true;
     }
 
     /**
@@ -17,7 +17,9 @@ import android.content.Intent;
 import android.graphics.Point;
 import android.media.MediaPlayer;
 import android.media.MediaPlayer.OnErrorListener;
+import android.media.MediaPlayer.OnInfoListener;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -30,6 +32,7 @@ import android.view.View;
 import android.widget.LinearLayout;
 import android.widget.PopupMenu;
 import android.widget.PopupMenu.OnMenuItemClickListener;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.VideoView;
@@ -37,12 +40,17 @@ import android.widget.VideoView;
 import com.iwedia.callback.PvrCallback;
 import com.iwedia.callback.ReminderCallback;
 import com.iwedia.dtv.ChannelInfo;
+import com.iwedia.dtv.DVBManager.OnNowNextChangedListener;
+import com.iwedia.dtv.EpgNowNextCache;
 import com.iwedia.dtv.IPService;
+import com.iwedia.dtv.NeighbourTuner;
+import com.iwedia.dtv.ZapStatistics;
 import com.iwedia.dtv.types.InternalException;
 import com.iwedia.epg.R;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -57,12 +65,18 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
     private static final int NUMERIC_CHANNEL_CHANGE_DURATION = 2000;
     /** Maximum Length of Numeric Buffer. */
     private static final int MAX_CHANNEL_NUMBER_LENGTH = 4;
+    /** File in application directory where zap statistics are saved. */
+    private static final String ZAP_STATISTICS_FILE = "zap_statistics.txt";
     /** URI For VideoView. */
     public static final String TV_URI = "tv://";
     /** Views needed in activity. */
     private LinearLayout mChannelContainer = null;
     private TextView mChannelNumber = null;
     private TextView mChannelName = null;
+    private LinearLayout mNowNextContainer = null;
+    private TextView mPresentName = null;
+    private ProgressBar mPresentProgress = null;
+    private TextView mFollowingName = null;
     /** Handler for sending action messages to update UI. */
     private UiHandler mHandler = null;
     /** Buffer for Channel Index, Numeric Channel Change. */
@@ -93,8 +107,16 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
         /** Initialize dialogs. */
         initializeDialogs();
         /** Register callbacks. */
+        mDVBManager.setNowNextChangedListener(new OnNowNextChangedListener() {
+            @Override
+            public void onNowNextChanged(int channelNumber) {
+                mHandler.obtainMessage(UiHandler.NOW_NEXT_CHANGED,
+                        channelNumber, 0).sendToTarget();
+            }
+        });
         mDVBManager.getPvrManager().registerPvrCallback(
-                PvrCallback.getInstance(this));
+                PvrCallback.getInstance(this,
+                        mDVBManager.getNeighbourTuner()));
         mDVBManager.getReminderManager().registerCallback(
                 ReminderCallback.getInstance(this));
         MediaMountedReceiver.getInstance().setMediaCallback(this);
@@ -125,6 +147,12 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
             MenuInflater inflater = mPopup.getMenuInflater();
             inflater.inflate(R.menu.main, mPopup.getMenu());
         }
+        /** Pre-tuning is offered only with a spare frontend and decoder. */
+        NeighbourTuner lNeighbourTuner = mDVBManager.getNeighbourTuner();
+        MenuItem lPreTuneItem = mPopup.getMenu().findItem(
+                R.id.menu_neighbour_pre_tune);
+        lPreTuneItem.setVisible(lNeighbourTuner.hasSpareRoutes());
+        lPreTuneItem.setChecked(lNeighbourTuner.isEnabled());
         mPopup.show();
     }
 
@@ -165,6 +193,22 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
                 mReminderListDialog.show();
                 return true;
             }
+            case R.id.menu_zap_statistics: {
+                File lFile = new File(getFilesDir(), ZAP_STATISTICS_FILE);
+                try {
+                    mDVBManager.getZapStatistics().dump(lFile);
+                    Toast.makeText(this, "Zap statistics saved to " + lFile,
+                            Toast.LENGTH_LONG).show();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error writing zap statistics.", e);
+                }
+                return true;
+            }
+            case R.id.menu_neighbour_pre_tune: {
+                item.setChecked(!item.isChecked());
+                mDVBManager.getNeighbourTuner().setEnabled(item.isChecked());
+                return true;
+            }
             case R.id.menu_version: {
                 Display display = getWindowManager().getDefaultDisplay();
                 Point size = new Point();
@@ -251,6 +295,20 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
                 return true;
             }
         });
+        /**
+         * Video info ends measurement of channel change. Listener of the
+         * media player is owned by the video view, it can be set through the
+         * view from API 17.
+         */
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            videoView.setOnInfoListener(new OnInfoListener() {
+                @Override
+                public boolean onInfo(MediaPlayer mp, int what, int extra) {
+                    mDVBManager.getZapStatistics().videoInfo(what);
+                    return false;
+                }
+            });
+        }
         return videoView;
     }
 
@@ -262,6 +320,31 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
         mChannelContainer.setVisibility(View.GONE);
         mChannelNumber = (TextView) findViewById(R.id.textview_channel_number);
         mChannelName = (TextView) findViewById(R.id.textview_channel_name);
+        mNowNextContainer = (LinearLayout) findViewById(R.id.linearlayout_now_next);
+        mPresentName = (TextView) findViewById(R.id.textview_present);
+        mPresentProgress = (ProgressBar) findViewById(R.id.progressbar_present);
+        mFollowingName = (TextView) findViewById(R.id.textview_following);
+    }
+
+    /**
+     * Show present and following event of a channel from cache.
+     * 
+     * @param channelNumber
+     *        Channel index in channel list.
+     */
+    private void showNowNext(int channelNumber) {
+        EpgNowNextCache.NowNext lNowNext = mDVBManager
+                .getNowNext(channelNumber);
+        if (lNowNext == null) {
+            mNowNextContainer.setVisibility(View.GONE);
+            return;
+        }
+        mPresentName.setText(lNowNext.getPresentName());
+        mPresentProgress.setProgress(lNowNext.getProgress(mDVBManager
+                .getCurrentEpochMinute()));
+        mFollowingName.setText(getString(R.string.following) + " "
+                + lNowNext.getFollowingName());
+        mNowNextContainer.setVisibility(View.VISIBLE);
     }
 
     /**
@@ -275,6 +358,7 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
             mChannelNumber.setText(String.valueOf(channelInfo.getNumber()));
             mChannelName.setText(channelInfo.getName());
             mChannelContainer.setVisibility(View.VISIBLE);
+            showNowNext(channelInfo.getNumber() - 1);
             mHandler.removeMessages(UiHandler.HIDE_VIEW_MESSAGE);
             mHandler.sendEmptyMessageDelayed(UiHandler.HIDE_VIEW_MESSAGE,
                     CHANNEL_VIEW_DURATION);
@@ -297,6 +381,7 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
         mChannelNumber.setText(mBufferedChannelIndex.toString());
         mChannelName.setText("");
         mChannelContainer.setVisibility(View.VISIBLE);
+        mNowNextContainer.setVisibility(View.GONE);
         mHandler.removeMessages(UiHandler.NUMERIC_CHANNEL_CHANGE);
         mHandler.sendEmptyMessageDelayed(UiHandler.NUMERIC_CHANNEL_CHANGE,
                 NUMERIC_CHANNEL_CHANGE_DURATION);
@@ -348,6 +433,8 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
              */
             case KeyEvent.KEYCODE_F4:
             case KeyEvent.KEYCODE_CHANNEL_UP: {
+                mDVBManager.getZapStatistics().keyPressed(
+                        event.getEventTime(), ZapStatistics.PATH_CHANNEL_KEY);
                 try {
                     showChannelInfo(mDVBManager.changeChannelUp());
                 } catch (InternalException e) {
@@ -366,6 +453,8 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
              */
             case KeyEvent.KEYCODE_F3:
             case KeyEvent.KEYCODE_CHANNEL_DOWN: {
+                mDVBManager.getZapStatistics().keyPressed(
+                        event.getEventTime(), ZapStatistics.PATH_CHANNEL_KEY);
                 try {
                     showChannelInfo(mDVBManager.changeChannelDown());
                 } catch (InternalException e) {
@@ -387,6 +476,9 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
             case KeyEvent.KEYCODE_7:
             case KeyEvent.KEYCODE_8:
             case KeyEvent.KEYCODE_9: {
+                /** Zap is measured from the last digit. */
+                mDVBManager.getZapStatistics().keyPressed(
+                        event.getEventTime(), ZapStatistics.PATH_NUMERIC);
                 showChannelNumber(generateChannelNumber(keyCode));
                 return true;
             }
@@ -464,6 +556,8 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
         /** Message ID for Hiding Channel Number/Name View. */
         public static final int HIDE_VIEW_MESSAGE = 0;
         public static final int NUMERIC_CHANNEL_CHANGE = 1;
+        /** Message ID for Present/Following Change, arg1 is channel. */
+        public static final int NOW_NEXT_CHANGED = 2;
 
         /** Channel Index */
         @Override
@@ -471,6 +565,15 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
             switch (msg.what) {
                 case HIDE_VIEW_MESSAGE: {
                     mChannelContainer.setVisibility(View.INVISIBLE);
+                    mNowNextContainer.setVisibility(View.GONE);
+                    break;
+                }
+                case NOW_NEXT_CHANGED: {
+                    if (mChannelContainer.getVisibility() == View.VISIBLE
+                            && mChannelInfo != null
+                            && mChannelInfo.getNumber() - 1 == msg.arg1) {
+                        showNowNext(msg.arg1);
+                    }
                     break;
                 }
                 case NUMERIC_CHANNEL_CHANGE: {
@@ -489,6 +592,8 @@ public class TVActivity extends DTVActivity implements OnMenuItemClickListener,
                                     "There was an Internal Execption on Change Channel.",
                                     e);
                         }
+                    } else {
+                        mDVBManager.getZapStatistics().keyIgnored();
                     }
                     showChannelInfo(lChannelInfo);
                     /** Flush Channel Buffer */
@@ -18,6 +18,8 @@ import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.TextView;
 
+import com.iwedia.dtv.DVBManager;
+import com.iwedia.dtv.EpgNowNextCache;
 import com.iwedia.epg.R;
 
 import java.util.ArrayList;
@@ -29,11 +31,14 @@ public class ChannelListAdapter extends BaseAdapter {
     private final String TAG = "ChannelListAdapter";
     private LayoutInflater mLayoutInflater = null;
     private ArrayList<String> mChannelNames = null;
+    private DVBManager mDVBManager = null;
 
-    public ChannelListAdapter(Context context, ArrayList<String> channelNames) {
+    public ChannelListAdapter(Context context, ArrayList<String> channelNames,
+            DVBManager dvbManager) {
         mLayoutInflater = (LayoutInflater) context
                 .getSystemService(Service.LAYOUT_INFLATER_SERVICE);
         mChannelNames = channelNames;
+        mDVBManager = dvbManager;
     }
 
     @Override
@@ -77,6 +82,10 @@ public class ChannelListAdapter extends BaseAdapter {
     private void setChannelItemView(int position, ChannelHolder holder) {
         holder.getItemChannelName().setText(mChannelNames.get(position));
         holder.getItemChannelNumber().setText(String.valueOf(position + 1));
+        /** Present event is taken from cache, EPG day is not loaded. */
+        EpgNowNextCache.NowNext lNowNext = mDVBManager.getNowNext(position);
+        holder.getItemChannelPresent().setText(
+                lNowNext == null ? "" : lNowNext.getPresentName());
     }
 
     /**
@@ -85,12 +94,15 @@ public class ChannelListAdapter extends BaseAdapter {
     private class ChannelHolder {
         private TextView mItemChannelNumber = null;
         private TextView mItemChannelName = null;
+        private TextView mItemChannelPresent = null;
 
         protected ChannelHolder(View view) {
             mItemChannelNumber = (TextView) view
                     .findViewById(R.id.textview_channel_number);
             mItemChannelName = (TextView) view
                     .findViewById(R.id.textview_channel_name);
+            mItemChannelPresent = (TextView) view
+                    .findViewById(R.id.textview_channel_present);
         }
 
         protected TextView getItemChannelNumber() {
@@ -100,5 +112,9 @@ public class ChannelListAdapter extends BaseAdapter {
         protected TextView getItemChannelName() {
             return mItemChannelName;
         }
+
+        protected TextView getItemChannelPresent() {
+            return mItemChannelPresent;
+        }
     }
 }
@@ -25,13 +25,14 @@ import android.widget.TextView;
 
 import com.iwedia.activities.EPGActivity;
 import com.iwedia.dtv.DVBManager;
+import com.iwedia.dtv.EpgState;
 import com.iwedia.dtv.types.TimeDate;
 import com.iwedia.epg.R;
 import com.iwedia.fragments.EPGFragment;
 import com.iwedia.fragments.EPGFragment.NotifyFragments;
 
-import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.BitSet;
 
 /**
  * Adapter with fragments for viewpager, there are 24 fragments which one
@@ -40,6 +41,9 @@ import java.util.ArrayList;
 public class FragmentTabAdapter extends FragmentPagerAdapter implements
         ViewPager.OnPageChangeListener {
     private static final int MESSAGE_REFRESH_TIME = 4;
+    private static final int MESSAGE_ROWS_LOADED = 5;
+    /** Distance in hours from day edge when neighbour day is prefetched. */
+    private static final int PREFETCH_HOURS = 4;
     private final String TAG = "FragmentTabAdapter";
     private EPGActivity mActivity = null;
     private ViewPager mViewPager = null;
@@ -51,6 +55,8 @@ public class FragmentTabAdapter extends FragmentPagerAdapter implements
     /** TextView for Date. */
     private TextView mTextViewDate = null, mTextViewDateCurrent = null;
     private Thread mTimerThread;
+    /** Version of EPG state drawn by fragments, -1 before first one. */
+    private long mShownEpgVersion = -1;
 
     public FragmentTabAdapter(EPGActivity activity) {
         super(activity.getSupportFragmentManager());
@@ -89,13 +95,26 @@ public class FragmentTabAdapter extends FragmentPagerAdapter implements
                     } catch (Exception e) {
                     }
                 } else {
-                    mTextViewDate.setText((String) msg.obj);
-                    try {
-                        notifyAllAdapters();
-                    } catch (RemoteException e) {
-                        Log.e(TAG, "Error with service connection.", e);
-                    }
+                    Object[] lLoaded = (Object[]) msg.obj;
+                    EpgState lState = (EpgState) lLoaded[1];
+                    mTextViewDate.setText((String) lLoaded[0]);
                     mActivity.getProgressDialog().cancel();
+                    /** States can arrive out of order, older ones are late. */
+                    if (lState.getVersion() <= mShownEpgVersion) {
+                        return;
+                    }
+                    /** Changed rows are known only against previous state. */
+                    if (msg.what == MESSAGE_ROWS_LOADED
+                            && lState.getVersion() == mShownEpgVersion + 1) {
+                        notifyAllRows(lState, (BitSet) lLoaded[2]);
+                    } else {
+                        try {
+                            notifyAllAdapters(lState);
+                        } catch (RemoteException e) {
+                            Log.e(TAG, "Error with service connection.", e);
+                        }
+                    }
+                    mShownEpgVersion = lState.getVersion();
                 }
             };
         };
@@ -110,25 +129,20 @@ public class FragmentTabAdapter extends FragmentPagerAdapter implements
                 new OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        mActivity.getProgressDialog().show();
-                        new Thread(new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    if (mPosition == 23) {
-                                        mActivity.getDVBManager().loadEvents(
-                                                DVBManager.LOAD_EPG_NEXT_DAY);
-                                    } else if (mPosition == 0) {
-                                        mActivity
-                                                .getDVBManager()
-                                                .loadEvents(
-                                                        DVBManager.LOAD_EPG_PREVIOUS_DAY);
-                                    }
-                                } catch (ParseException e) {
-                                    Log.e(TAG, "Error in date parsing.", e);
-                                }
-                            }
-                        }).start();
+                        /** Prefetched day is shown without waiting. */
+                        if (!mActivity.getDVBManager().isDayCached(
+                                mPosition == 0 ? DVBManager.LOAD_EPG_PREVIOUS_DAY
+                                        : DVBManager.LOAD_EPG_NEXT_DAY)) {
+                            mActivity.getProgressDialog().show();
+                        }
+                        /** Day is loaded on EPG loader thread. */
+                        if (mPosition == 23) {
+                            mActivity.getDVBManager().loadEvents(
+                                    DVBManager.LOAD_EPG_NEXT_DAY);
+                        } else if (mPosition == 0) {
+                            mActivity.getDVBManager().loadEvents(
+                                    DVBManager.LOAD_EPG_PREVIOUS_DAY);
+                        }
                     }
                 });
         lEPGDayAlertBuilder.setPositiveButton(R.string.no,
@@ -201,6 +215,21 @@ public class FragmentTabAdapter extends FragmentPagerAdapter implements
     public void onPageSelected(int position) {
         notifyAllFragments();
         mPosition = position;
+        prefetchNeighbourDay();
+    }
+
+    /**
+     * Start loading of previous or next day in background when user comes
+     * close to the beginning or the end of the day.
+     */
+    private void prefetchNeighbourDay() {
+        if (mPosition >= EPGActivity.HOURS - PREFETCH_HOURS) {
+            mActivity.getDVBManager().prefetchEvents(
+                    DVBManager.LOAD_EPG_NEXT_DAY);
+        } else if (mPosition < PREFETCH_HOURS) {
+            mActivity.getDVBManager().prefetchEvents(
+                    DVBManager.LOAD_EPG_PREVIOUS_DAY);
+        }
     }
 
     @Override
@@ -219,21 +248,55 @@ public class FragmentTabAdapter extends FragmentPagerAdapter implements
     }
 
     /**
-     * If there are new events, update old ones.
+     * If there are new events, update old ones. All fragments show the same
+     * state.
      * 
      * @throws RemoteException
      */
-    private void notifyAllAdapters() throws RemoteException {
+    private void notifyAllAdapters(EpgState state) throws RemoteException {
         for (int i = 0; i < mFragments.size(); i++) {
-            mFragments.get(i).reInitializeAdapter();
+            mFragments.get(i).reInitializeAdapter(state.getVisibleGrid());
         }
     }
 
+    /**
+     * Draw again rows of all fragments whose events are acquired.
+     */
+    private void notifyAllRows(EpgState state, BitSet channels) {
+        for (int i = 0; i < mFragments.size(); i++) {
+            mFragments.get(i).updateRows(state.getVisibleGrid(), channels);
+        }
+    }
+
+    /**
+     * Show hour page of an event and scroll all fragments to its row.
+     * 
+     * @param channel
+     *        Row of the event.
+     * @param hour
+     *        Hour of the day when event begins.
+     */
+    public void showEvent(int channel, int hour) {
+        mViewPager.setCurrentItem(hour);
+        for (int i = 0; i < mFragments.size(); i++) {
+            mFragments.get(i).setListViewPosition(channel);
+        }
+    }
+
+    /**
+     * When rows of shown day are acquired, update only them.
+     */
+    public void notifyRows(String date, EpgState state, BitSet channels) {
+        Message.obtain(mHandler, MESSAGE_ROWS_LOADED,
+                new Object[] { date, state, channels }).sendToTarget();
+    }
+
     /**
      * When callback arrives for new events, update view.
      */
-    public void notifyAdapters(String date) {
-        Message.obtain(mHandler, 0, date).sendToTarget();
+    public void notifyAdapters(String date, EpgState state) {
+        Message.obtain(mHandler, 0, new Object[] { date, state })
+                .sendToTarget();
     }
 
     /**
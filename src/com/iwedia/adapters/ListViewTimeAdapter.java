@@ -10,10 +10,8 @@
  */
 package com.iwedia.adapters;
 
-import android.app.Activity;
 import android.content.Context;
 import android.support.v4.app.FragmentActivity;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -21,13 +19,10 @@ import android.widget.BaseAdapter;
 import android.widget.ListView;
 
 import com.iwedia.custom.TimeLineObject;
-import com.iwedia.dtv.TimeEvent;
-import com.iwedia.dtv.TimeEventHolder;
+import com.iwedia.dtv.EpgGrid;
 import com.iwedia.epg.R;
 
-import java.lang.reflect.Array;
 import java.util.ArrayList;
-import java.util.Arrays;
 
 /**
  * Adapter for listview who contains events (whose duration is one hour) for all
@@ -37,42 +32,31 @@ public class ListViewTimeAdapter extends BaseAdapter {
     private final String TAG = "AdapterActivityEPGListView";
     private LayoutInflater mLayoutInflater = null;
     private ArrayList<String> mChannelNames = null;
-    private ArrayList<ArrayList<TimeEventHolder>> mTimeEventHolders = null;
+    private EpgGrid mEpgGrid = null;
+    private int mHour = 0;
     private Context mContext = null;
 
-    public ListViewTimeAdapter(Activity activity,
-            ArrayList<String> channelNames, ArrayList<TimeEvent> timeEvents,
-            int time) {
+    public ListViewTimeAdapter(FragmentActivity activity,
+            ArrayList<String> channelNames, EpgGrid epgGrid, int time) {
         mContext = activity.getApplicationContext();
         mLayoutInflater = activity.getLayoutInflater();
         mChannelNames = channelNames;
-        initializeEvents(timeEvents, time);
+        mEpgGrid = epgGrid;
+        mHour = time;
     }
 
-    public ListViewTimeAdapter(FragmentActivity activity,
-            ArrayList<String> channelNames, TimeEvent[] timeEvents, int time) {
-        mContext = activity.getApplicationContext();
-        mLayoutInflater = activity.getLayoutInflater();
-        mChannelNames = channelNames;
-        ArrayList<TimeEvent> events = new ArrayList<TimeEvent>(
-                Arrays.asList(timeEvents));
-        initializeEvents(events, time);
+    /**
+     * Replace shown events, rows are drawn again when they are bound.
+     */
+    public void setEpgGrid(EpgGrid epgGrid) {
+        mEpgGrid = epgGrid;
     }
 
-    private void initializeEvents(ArrayList<TimeEvent> timeEvents, int time) {
-        try {
-            if (null != timeEvents) {
-                TimeEvent lTimeEvent = timeEvents.get(time);
-                if (null != lTimeEvent) {
-                    mTimeEventHolders = lTimeEvent.getEvents();
-                    if (mTimeEventHolders == null) {
-                        mTimeEventHolders = new ArrayList<ArrayList<TimeEventHolder>>();
-                    }
-                }
-            }
-        } catch (IndexOutOfBoundsException e) {
-            Log.w(TAG, "There are no Time Events.", e);
-        }
+    /**
+     * Replace shown channels, list has to be notified about the change.
+     */
+    public void setChannelNames(ArrayList<String> channelNames) {
+        mChannelNames = channelNames;
     }
 
     @Override
@@ -104,11 +88,7 @@ public class ListViewTimeAdapter extends BaseAdapter {
     }
 
     private void setView(TimeLineObject holder, int position) {
-        if (null != mTimeEventHolders && mTimeEventHolders.size() > 0) {
-            holder.setEvents(mTimeEventHolders.get(position),
-                    mChannelNames.get(position));
-        } else {
-            holder.setEvents(null, mChannelNames.get(position));
-        }
+        holder.setEvents(mEpgGrid, mHour, position,
+                mChannelNames.get(position));
     }
 }
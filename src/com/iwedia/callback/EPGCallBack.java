@@ -5,8 +5,6 @@ import android.util.Log;
 import com.iwedia.dtv.DVBManager;
 import com.iwedia.dtv.epg.IEpgCallback;
 
-import java.text.ParseException;
-
 public class EPGCallBack implements IEpgCallback {
     private static final String TAG = "EPGCallBack";
     private DVBManager mDVBManager = null;
@@ -16,24 +14,26 @@ public class EPGCallBack implements IEpgCallback {
     }
 
     @Override
-    public void scEventChanged(int arg0, int arg1) {
-        Log.d(TAG, "EPG CALLBACK scEventChanged");
-        mDVBManager.reLoadEvents();
+    public void scEventChanged(int filterID, int serviceIndex) {
+        Log.d(TAG, "EPG CALLBACK scEventChanged " + serviceIndex);
+        mDVBManager.reLoadServiceEvents(serviceIndex);
     }
 
     @Override
-    public void scAcquisitionFinished(int arg0, int arg1) {
-        Log.d(TAG, "EPG CALLBACK scAcquisitionFinished");
-        mDVBManager.reLoadEvents();
+    public void scAcquisitionFinished(int filterID, int serviceIndex) {
+        Log.d(TAG, "EPG CALLBACK scAcquisitionFinished " + serviceIndex);
+        mDVBManager.reLoadServiceEvents(serviceIndex);
     }
 
     @Override
-    public void pfEventChanged(int arg0, int arg1) {
-        Log.d(TAG, "EPG CALLBACK pfEventChanged");
+    public void pfEventChanged(int filterID, int serviceIndex) {
+        Log.d(TAG, "EPG CALLBACK pfEventChanged " + serviceIndex);
+        mDVBManager.updateNowNext(serviceIndex);
     }
 
     @Override
-    public void pfAcquisitionFinished(int arg0, int arg1) {
-        Log.d(TAG, "EPG CALLBACK pfAcquisitionFinished");
+    public void pfAcquisitionFinished(int filterID, int serviceIndex) {
+        Log.d(TAG, "EPG CALLBACK pfAcquisitionFinished " + serviceIndex);
+        mDVBManager.updateNowNext(serviceIndex);
     }
 }
@@ -15,6 +15,7 @@ import android.os.Handler;
 import android.os.Message;
 import android.widget.Toast;
 
+import com.iwedia.dtv.NeighbourTuner;
 import com.iwedia.dtv.pvr.IPvrCallback;
 import com.iwedia.dtv.pvr.PvrEventMediaAdd;
 import com.iwedia.dtv.pvr.PvrEventMediaRemove;
@@ -74,15 +75,20 @@ public class PvrCallback implements IPvrCallback {
     };
     private static PvrCallback sInstance = null;
 
-    public static PvrCallback getInstance(Context mContext) {
+    /** Pre-tuning which has to give its frontend to recordings. */
+    private final NeighbourTuner mNeighbourTuner;
+
+    public static PvrCallback getInstance(Context mContext,
+            NeighbourTuner neighbourTuner) {
         if (sInstance == null) {
-            sInstance = new PvrCallback(mContext);
+            sInstance = new PvrCallback(mContext, neighbourTuner);
         }
         return sInstance;
     }
 
-    private PvrCallback(Context mContext) {
+    private PvrCallback(Context mContext, NeighbourTuner neighbourTuner) {
         this.mContext = mContext;
+        mNeighbourTuner = neighbourTuner;
     }
 
     public static void destroyInstance() {
@@ -128,6 +134,7 @@ public class PvrCallback implements IPvrCallback {
 
     @Override
     public void eventRecordConflict(PvrEventRecordConflict arg0) {
+        mNeighbourTuner.release();
         uiHandler.sendEmptyMessage(MESSAGE_SHOW_TOAST_CONFLICT);
     }
 
@@ -141,16 +148,19 @@ public class PvrCallback implements IPvrCallback {
 
     @Override
     public void eventRecordResourceIssue(PvrEventRecordResourceIssue arg0) {
+        mNeighbourTuner.release();
     }
 
     @Override
     public void eventRecordStart(PvrEventRecordStart arg0) {
+        mNeighbourTuner.recordingStarted();
         uiHandler.sendEmptyMessage(MESSAGE_SHOW_TOAST_RECORD_STARTED);
 
     }
 
     @Override
     public void eventRecordStop(PvrEventRecordStop arg0) {
+        mNeighbourTuner.recordingStopped();
         uiHandler.sendEmptyMessage(MESSAGE_SHOW_TOAST_RECORD_STOPPED);
 
     }
@@ -17,7 +17,6 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
-import android.graphics.Path;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -29,14 +28,12 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.iwedia.dtv.DVBManager;
+import com.iwedia.dtv.EpgGrid;
 import com.iwedia.dtv.TimeEventHolder;
-import com.iwedia.dtv.pvr.SmartCreateParams;
 import com.iwedia.dtv.reminder.ReminderSmartParam;
 import com.iwedia.dtv.types.InternalException;
 import com.iwedia.epg.R;
 
-import java.util.ArrayList;
-
 /**
  * This custom view represents visually duration and time of the event.
  */
@@ -44,7 +41,9 @@ public class TimeLineObject extends View {
     private final String TAG = "TimeLineObject";
     private Paint mPaintTime = null;
     private Paint mPaintPath = null;
-    private ArrayList<TimeEventHolder> mTimeEventHolder = null;
+    private EpgGrid mEpgGrid = null;
+    private int mHour = 0;
+    private int mChannel = 0;
     private Context mContext = null;
     private String mChannelName = "";
 
@@ -71,21 +70,18 @@ public class TimeLineObject extends View {
      *        Canvas from view.
      */
     private void drawTimeLine(Canvas canvas) {
-        if (null != mTimeEventHolder) {
-            for (TimeEventHolder timeHolder : mTimeEventHolder) {
-                int lHours = 0;
-                if (timeHolder.getEndTime().getHours() > timeHolder
-                        .getBeginTime().getHours()) {
-                    lHours = timeHolder.getEndTime().getHours()
-                            - timeHolder.getBeginTime().getHours();
-                }
-                int lBeginMinutes = timeHolder.getBeginTime().getMinutes() == 0 ? 1
-                        : timeHolder.getBeginTime().getMinutes();
-                int lEndMinutes = ((lHours * 59) + timeHolder.getEndTime()
-                        .getMinutes()) == 0 ? 1 : (lHours * 59)
-                        + timeHolder.getEndTime().getMinutes();
-                float lXBeginPosition = lBeginMinutes * canvas.getWidth() / 59;
-                float lXEndPosition = lEndMinutes * canvas.getWidth() / 59;
+        if (null != mEpgGrid) {
+            int lHourStart = mEpgGrid.getHourStartMinute(mHour);
+            /** Column is longer or empty when clocks change. */
+            float lHourLength = Math.max(1, mEpgGrid
+                    .getHourStartMinute(mHour + 1) - lHourStart);
+            int lWidth = canvas.getWidth();
+            int lLastSlot = mEpgGrid.getCellEnd(mChannel, mHour);
+            for (int slot = mEpgGrid.getCellStart(mChannel, mHour); slot < lLastSlot; slot++) {
+                float lXBeginPosition = (mEpgGrid.getSlotBeginMinute(slot)
+                        - lHourStart) * lWidth / lHourLength;
+                float lXEndPosition = (mEpgGrid.getSlotEndMinute(slot)
+                        - lHourStart) * lWidth / lHourLength;
                 canvas.drawRect(lXBeginPosition, 0, lXEndPosition,
                         canvas.getHeight(), mPaintTime);
                 drawBorders(canvas, lXEndPosition);
@@ -103,12 +99,9 @@ public class TimeLineObject extends View {
      *        End position of rectangle.
      */
     private void drawBorders(Canvas canvas, float xEndPosition) {
-        Path lPath = new Path();
         if (xEndPosition < canvas.getWidth()) {
-            lPath.moveTo(xEndPosition, 0);
-            lPath.lineTo(xEndPosition, canvas.getHeight());
-            lPath.close();
-            canvas.drawPath(lPath, mPaintPath);
+            canvas.drawLine(xEndPosition, 0, xEndPosition, canvas.getHeight(),
+                    mPaintPath);
         }
     }
 
@@ -118,8 +111,23 @@ public class TimeLineObject extends View {
         super.onDraw(canvas);
     }
 
-    public void setEvents(ArrayList<TimeEventHolder> events, String channelName) {
-        mTimeEventHolder = events;
+    /**
+     * Set events of one cell of the EPG grid.
+     * 
+     * @param epgGrid
+     *        Loaded EPG grid, can be null.
+     * @param hour
+     *        Hour this view represents.
+     * @param channel
+     *        Channel index this view represents.
+     * @param channelName
+     *        Name of the channel.
+     */
+    public void setEvents(EpgGrid epgGrid, int hour, int channel,
+            String channelName) {
+        mEpgGrid = epgGrid;
+        mHour = hour;
+        mChannel = channel;
         mChannelName = channelName;
     }
 
@@ -127,14 +135,19 @@ public class TimeLineObject extends View {
      * For detailed information about events in duration of one hour.
      */
     public void showDialogWithEvents() {
-        if (null != mTimeEventHolder && mTimeEventHolder.size() > 0) {
+        int lFirstSlot = mEpgGrid == null ? 0 : mEpgGrid.getCellStart(
+                mChannel, mHour);
+        int lLastSlot = mEpgGrid == null ? 0 : mEpgGrid.getCellEnd(mChannel,
+                mHour);
+        if (lFirstSlot < lLastSlot) {
             View lViewDialog = ((LayoutInflater) mContext
                     .getSystemService(Service.LAYOUT_INFLATER_SERVICE))
                     .inflate(R.layout.epg_events_dialog, null);
             LinearLayout lLinearLayout = (LinearLayout) lViewDialog
                     .findViewById(R.id.linearlayout_events);
-            for (int i = 0; i < mTimeEventHolder.size(); i++) {
-                final TimeEventHolder holder = mTimeEventHolder.get(i);
+            for (int slot = lFirstSlot; slot < lLastSlot; slot++) {
+                final TimeEventHolder holder = new TimeEventHolder(mEpgGrid,
+                        slot);
                 View lViewDialogButtons = ((LayoutInflater) mContext
                         .getSystemService(Service.LAYOUT_INFLATER_SERVICE))
                         .inflate(R.layout.epg_events_dialog_buttons, null);
@@ -150,14 +163,10 @@ public class TimeLineObject extends View {
                     @Override
                     public void onClick(View v) {
                         try {
-                            DVBManager.getInstance().createSmartRecord(
-                                    new SmartCreateParams(holder.getEvent()
-                                            .getServiceIndex(), holder
-                                            .getEvent().getEventID(), holder
-                                            .getEvent().getName(), holder
-                                            .getEvent().getDescription(),
-                                            holder.getEvent().getStartTime(),
-                                            holder.getEvent().getEndTime()));
+                            DVBManager lDVBManager = DVBManager.getInstance();
+                            lDVBManager.createSmartRecord(lDVBManager
+                                    .getSmartCreateParams(holder.getEpgGrid(),
+                                            holder.getEventRef()));
                             Toast.makeText(mContext,
                                     R.string.smart_record_created,
                                     Toast.LENGTH_SHORT).show();
@@ -175,24 +184,15 @@ public class TimeLineObject extends View {
                     @Override
                     public void onClick(View v) {
                         try {
-                            Log.d(TAG, "EVENT NAME: "
-                                    + holder.getEvent().getName());
-                            Log.d(TAG, "EVENT DESCRIPTION: "
-                                    + holder.getEvent().getDescription());
-                            Log.d(TAG, "EVENT SERVICE INDEX: "
-                                    + holder.getEvent().getServiceIndex());
+                            DVBManager lDVBManager = DVBManager.getInstance();
+                            ReminderSmartParam lParam = lDVBManager
+                                    .getReminderSmartParam(holder.getEpgGrid(),
+                                            holder.getEventRef());
+                            Log.d(TAG, "EVENT NAME: " + holder.getEventName());
                             Log.d(TAG, "EVENT ID: "
-                                    + holder.getEvent().getEventID());
-                            Log.d(TAG, "EVENT START TIME: "
-                                    + holder.getEvent().getStartTime()
-                                            .toString());
-                            DVBManager.getInstance().createReminder(
-                                    new ReminderSmartParam(holder.getEvent()
-                                            .getName(), holder.getEvent()
-                                            .getDescription(), holder
-                                            .getEvent().getServiceIndex(),
-                                            holder.getEvent().getEventID(),
-                                            holder.getEvent().getStartTime()));
+                                    + holder.getEpgGrid().getEventId(
+                                            holder.getEventRef()));
+                            lDVBManager.createReminder(lParam);
                             Toast.makeText(mContext, R.string.reminder_created,
                                     Toast.LENGTH_SHORT).show();
                         } catch (IllegalArgumentException e) {
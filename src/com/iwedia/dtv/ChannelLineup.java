@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import java.util.ArrayList;
+
+/**
+ * Channel list as shown to the user: DVB services of the service list first,
+ * then IP channels. Maps channel indexes to service indexes and IP channels.
+ * Instances never change, a new lineup is made when the service list or the
+ * IP channel list changes.
+ */
+public class ChannelLineup {
+    private final int mListIndex;
+    /** Hash of list index and services, see {@link #getId()}. */
+    private final int mId;
+    /** Size of the service list reported by middleware. */
+    private final int mServiceCount;
+    private final int mDvbChannelCount;
+    private final int mServiceIndexOffset;
+    /** IP channel list the lineup was made for, null if there is no IP. */
+    private final ArrayList<IPService> mIpChannels;
+    private final int mIpChannelCount;
+
+    /**
+     * Create a lineup.
+     *
+     * @param listIndex
+     *        Index of the service list.
+     * @param id
+     *        Hash of list index and master indexes of DVB channels.
+     * @param serviceCount
+     *        Size of the service list reported by middleware.
+     * @param dvbChannelCount
+     *        Number of DVB services shown as channels.
+     * @param serviceIndexOffset
+     *        Difference between service index and channel index, 1 if the
+     *        first service in the list is a dummy one.
+     * @param ipChannels
+     *        IP channels, null if there is no IP route.
+     */
+    public ChannelLineup(int listIndex, int id, int serviceCount,
+            int dvbChannelCount, int serviceIndexOffset,
+            ArrayList<IPService> ipChannels) {
+        mListIndex = listIndex;
+        mId = id;
+        mServiceCount = serviceCount;
+        mDvbChannelCount = Math.max(0, dvbChannelCount);
+        mServiceIndexOffset = serviceIndexOffset;
+        mIpChannels = ipChannels;
+        mIpChannelCount = ipChannels == null ? 0 : ipChannels.size();
+    }
+
+    /**
+     * Check if the lineup still describes given lists.
+     *
+     * @param listIndex
+     *        Index of the service list in use.
+     * @param ipChannels
+     *        IP channel list in use, null if there is no IP route.
+     */
+    public boolean isMadeFor(int listIndex, ArrayList<IPService> ipChannels) {
+        int lIpChannelCount = ipChannels == null ? 0 : ipChannels.size();
+        return listIndex == mListIndex && ipChannels == mIpChannels
+                && lIpChannelCount == mIpChannelCount;
+    }
+
+    /**
+     * Number of all channels.
+     */
+    public int size() {
+        return mDvbChannelCount + mIpChannelCount;
+    }
+
+    public int getDvbChannelCount() {
+        return mDvbChannelCount;
+    }
+
+    public int getIpChannelCount() {
+        return mIpChannelCount;
+    }
+
+    public int getListIndex() {
+        return mListIndex;
+    }
+
+    /**
+     * Identity of the DVB channels, stored EPG rows of a lineup with another
+     * identity belong to other services even if the size is the same.
+     */
+    public int getId() {
+        return mId;
+    }
+
+    /**
+     * Size of the service list the lineup was made for, a different size
+     * means the list was changed.
+     */
+    public int getServiceCount() {
+        return mServiceCount;
+    }
+
+    public boolean isIpChannel(int channel) {
+        return channel >= mDvbChannelCount;
+    }
+
+    /**
+     * Service index of a DVB channel.
+     */
+    public int getServiceIndex(int channel) {
+        return channel + mServiceIndexOffset;
+    }
+
+    /**
+     * Channel index of a service, it can be outside of the lineup for unknown
+     * services.
+     */
+    public int getChannelIndex(int serviceIndex) {
+        return serviceIndex - mServiceIndexOffset;
+    }
+
+    /**
+     * IP channel shown at a channel index.
+     */
+    public IPService getIpChannel(int channel) {
+        return mIpChannels.get(channel - mDvbChannelCount);
+    }
+}
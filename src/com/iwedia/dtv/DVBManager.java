@@ -11,10 +11,10 @@
 package com.iwedia.dtv;
 
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.iwedia.activities.DTVActivity;
-import com.iwedia.activities.EPGActivity;
 import com.iwedia.callback.EPGCallBack;
 import com.iwedia.callback.PvrCallback;
 import com.iwedia.callback.ReminderCallback;
@@ -22,6 +22,7 @@ import com.iwedia.dtv.dtvmanager.DTVManager;
 import com.iwedia.dtv.dtvmanager.IDTVManager;
 import com.iwedia.dtv.epg.EpgEvent;
 import com.iwedia.dtv.epg.EpgEventGenre;
+import com.iwedia.dtv.epg.EpgEventType;
 import com.iwedia.dtv.epg.EpgGenreFilter;
 import com.iwedia.dtv.epg.EpgServiceFilter;
 import com.iwedia.dtv.epg.EpgTimeFilter;
@@ -37,18 +38,28 @@ import com.iwedia.dtv.route.broadcast.RouteMassStorageDescriptor;
 import com.iwedia.dtv.route.common.ICommonRouteControl;
 import com.iwedia.dtv.route.common.RouteDecoderDescriptor;
 import com.iwedia.dtv.route.common.RouteInputOutputDescriptor;
-import com.iwedia.dtv.service.IServiceControl;
 import com.iwedia.dtv.service.ServiceDescriptor;
 import com.iwedia.dtv.service.SourceType;
 import com.iwedia.dtv.swupdate.SWVersionType;
 import com.iwedia.dtv.types.InternalException;
 import com.iwedia.dtv.types.TimeDate;
 
+import java.io.File;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * DVBManager - Class For Handling MW Components.
@@ -59,6 +70,16 @@ public class DVBManager {
     public static final String DATE_FORMAT = "HH:mm:ss' 'dd/MM/yyyy";
     /** 7 DAYS EPG */
     private static final int MAX_EPG_DAYS = 6;
+    private static final int NO_EPG_DAY = -1;
+    /** Rows acquired before and after visible rows of EPG list. */
+    private static final int EPG_VIEWPORT_MARGIN = 5;
+    /** Visible rows assumed before EPG list is shown. */
+    private static final int DEFAULT_EPG_VIEWPORT_ROWS = 10;
+    /** Acquired rows are shown after this many rows or this much time. */
+    private static final int EPG_PUBLISH_BATCH_ROWS = 8;
+    private static final int EPG_PUBLISH_INTERVAL_MILLIS = 100;
+    /** Part of EPG memory budget for texts, the rest is for loaded days. */
+    private static final int EPG_STRING_POOL_SHARE = 2;
     public static final int LOAD_EPG_PREVIOUS_DAY = -1;
     public static final int LOAD_EPG_CURRENT_DAY = 0;
     public static final int LOAD_EPG_NEXT_DAY = 1;
@@ -81,22 +102,67 @@ public class DVBManager {
     private boolean ipAndSomeOtherTunerType = false;
     /** DVB Manager Instance. */
     private static DVBManager sInstance = null;
-    /** Holder who is holding loaded EPG events. */
-    private TimeEvent[] mTimeEventHolders = null;
+    /** Shown EPG events and filter, replaced as a whole on every change. */
+    private final AtomicReference<EpgState> mEpgState =
+            new AtomicReference<EpgState>(EpgState.EMPTY);
     /** EPG Filter ID */
     private int mEPGFilterID = -1;
+    /** Time filter of the loaded EPG day, used on loader thread only. */
+    private EpgTimeFilter mEpgTimeFilter = null;
+    /** Date of the loaded EPG day. */
+    private volatile String mEpgDate = "";
+    /** Recently loaded EPG days. */
+    private final EpgDayCache mEpgDayCache = new EpgDayCache(MAX_EPG_DAYS + 1);
     /** EPG CallBack */
     private EPGCallBack mEPGCallBack = null;
-    /** Flag that indicates if loading is in progress. */
-    private boolean loadInProgress = false;
+    /** Worker which runs EPG loads. */
+    private EpgLoader mEpgLoader = null;
+    /** Event lists for parallel acquisition, empty in serial mode. */
+    private EpgEventListPool mEpgEventListPool = null;
+    /** Descriptors of services in current list. */
+    private ServiceDescriptorCache mServiceDescriptors = null;
+    /** Channel list made from service list and IP channels, null if stale. */
+    private volatile ChannelLineup mChannelLineup = null;
+    /** Durations of channel changes. */
+    private final ZapStatistics mZapStatistics = new ZapStatistics();
+    /** Spare frontends tuned to the likely next channel. */
+    private NeighbourTuner mNeighbourTuner = null;
+    /** Channel of the last channel change, -1 before the first one. */
+    private int mLastChannelNumber = -1;
+    /** Requested number of parallel EPG acquisitions, 1 is serial. */
+    private volatile int mEpgAcquisitionThreads = 1;
+    /** Increased by every EPG load request, only the newest load is shown. */
+    private final AtomicInteger mEpgGeneration = new AtomicInteger();
+    private final AtomicInteger mSupersededEpgLoads = new AtomicInteger();
+    /** Shares equal names and descriptions of loaded events. */
+    private final EpgStringPool mEpgStringPool = new EpgStringPool(
+            EpgDayCache.DEFAULT_MEMORY_BUDGET / EPG_STRING_POOL_SHARE);
+    /** Words of events of the shown day. */
+    private final EpgSearchIndex mEpgSearchIndex = new EpgSearchIndex();
+    /** Present and following events of services. */
+    private final EpgNowNextCache mEpgNowNextCache = new EpgNowNextCache();
+    /** Events of the shown grid running now, found again every minute. */
+    private volatile RunningEvents mRunningEvents = null;
+    /** Present/following change listener. */
+    private OnNowNextChangedListener mNowNextChangedListener = null;
+    /** Rows of EPG list on screen, -1 until list is shown. */
+    private volatile int mEpgViewportFirst = -1;
+    private volatile int mEpgViewportCount = 0;
+    /** Channel watched when EPG load was requested, set on UI thread. */
+    private volatile int mEpgFocusedChannel = 0;
+    /** Loaded days stored on disk, null until directory is set. */
+    private volatile EpgSnapshot mEpgSnapshot = null;
+    /** Day whose snapshot misses service loads, used on loader thread. */
+    private int mEpgSnapshotDirtyDay = NO_EPG_DAY;
+    /** Size of the last acquired day, used on loader thread. */
+    private int mEpgEventCountHint = 0;
+    private int mEpgSlotCountHint = 0;
     /** EPG Events Loaded */
     private OnLoadFinishedListener mLoadFinishedListener = null;
     /** CallBack for UI. */
     private DVBStatus mDVBStatus = null;
-    /** EPG Current Day. */
-    private int mEPGDay = 0;
-    /** Active EPG genre */
-    private EpgEventGenre mGenre = EpgEventGenre.GENRE_ALL;
+    /** EPG Current Day, changed only on UI thread. */
+    private volatile int mEPGDay = 0;
     private PvrManager mPvrManager = null;
     /** Reminder manager */
     private ReminderManager mReminderManager = null;
@@ -113,7 +179,21 @@ public class DVBManager {
      * Listener for loading EPG events
      */
     public interface OnLoadFinishedListener {
-        public void onLoadFinished(String date);
+        public void onLoadFinished(String date, EpgState state);
+
+        /**
+         * Some rows of the shown day are acquired again. Rows are changed
+         * against the state with the previous version.
+         */
+        public void onRowsLoaded(String date, EpgState state, BitSet channels);
+    }
+
+    /**
+     * Listener for present/following event changes.
+     */
+    public interface OnNowNextChangedListener {
+        /** Called from middleware thread. */
+        public void onNowNextChanged(int channelNumber);
     }
 
     public static DVBManager getInstance() throws InternalException {
@@ -134,15 +214,42 @@ public class DVBManager {
      * @throws InternalException
      */
     public void InitializeDTVService() throws InternalException {
+        mNeighbourTuner = new NeighbourTuner(mDTVManager);
         initializeRouteId();
         mReminderManager = ReminderManager.getInstance(mDTVManager);
         mPvrManager = PvrManager.getInstance(mDTVManager);
         mEPGFilterID = mDTVManager.getEpgControl().createEventList();
+        mEpgEventListPool = new EpgEventListPool(mDTVManager);
+        mServiceDescriptors = new ServiceDescriptorCache(mDTVManager);
+        mEpgLoader = new EpgLoader(new EpgLoader.LoadTarget() {
+            @Override
+            public void loadEvents(boolean daySwitched)
+                    throws ParseException {
+                DVBManager.this.loadEvents(daySwitched, mEpgGeneration.get());
+            }
+
+            @Override
+            public void loadServiceEvents(int serviceIndex)
+                    throws ParseException {
+                DVBManager.this.loadServiceEvents(serviceIndex);
+            }
+
+            @Override
+            public void loadDayIntoCache(int epgDay) {
+                DVBManager.this.loadDayIntoCache(epgDay);
+            }
+
+            @Override
+            public void serviceEventsLoaded() {
+                writeDirtyEpgSnapshot();
+            }
+        });
         mEPGCallBack = new EPGCallBack(this);
         mDTVManager.getEpgControl()
                 .registerCallback(mEPGCallBack, mEPGFilterID);
-        /** Initially set genre to ALL */
-        setGenreFilter(EpgEventGenre.GENRE_ALL);
+        setEpgMemoryBudget(EpgDayCache.DEFAULT_MEMORY_BUDGET);
+        /** Initially show all events */
+        setEpgFilter(EpgFilter.ALL);
     }
 
     /**
@@ -163,6 +270,17 @@ public class DVBManager {
          */
         RouteDecoderDescriptor decoderDescriptor = commonRouteControl
                 .getDecoderDescriptor(0);
+        /**
+         * Pre-tuning needs its own demux and decoder, otherwise it would
+         * replace the picture of the live route.
+         */
+        RouteDemuxDescriptor spareDemuxDescriptor = getSpareDemuxDescriptor(
+                broadcastRouteControl, demuxDescriptor);
+        RouteDecoderDescriptor spareDecoderDescriptor =
+                getSpareDecoderDescriptor(commonRouteControl,
+                        decoderDescriptor);
+        boolean lSpareDecoding = spareDemuxDescriptor != null
+                && spareDecoderDescriptor != null;
         /**
          * RETRIEVING OUTPUT DESCRIPTOR.
          */
@@ -182,10 +300,15 @@ public class DVBManager {
          * FIND DVB and IP front-end descriptors.
          */
         EnumSet<RouteFrontendType> frontendTypes = null;
+        EnumMap<RouteFrontendType, RouteFrontendDescriptor> lLiveFrontends =
+                new EnumMap<RouteFrontendType, RouteFrontendDescriptor>(
+                        RouteFrontendType.class);
         for (int i = 0; i < numberOfFrontends; i++) {
             RouteFrontendDescriptor frontendDescriptor = broadcastRouteControl
                     .getFrontendDescriptor(i);
             frontendTypes = frontendDescriptor.getFrontendType();
+            /** Frontend that is not live for any type can be pre-tuned. */
+            boolean lSpare = lSpareDecoding && hasLiveRoutes(frontendTypes);
             for (RouteFrontendType frontendType : frontendTypes) {
                 switch (frontendType) {
                     case SAT: {
@@ -193,6 +316,25 @@ public class DVBManager {
                             mLiveRouteSat = getLiveRouteId(frontendDescriptor,
                                     demuxDescriptor, decoderDescriptor,
                                     outputDescriptor, broadcastRouteControl);
+                            lLiveFrontends.put(frontendType,
+                                    frontendDescriptor);
+                        } else if (lSpare) {
+                            mNeighbourTuner.setFrontends(SourceType.SAT,
+                                    getFrontendRoutes(mLiveRouteSat,
+                                            lLiveFrontends.get(frontendType),
+                                            spareDemuxDescriptor,
+                                            spareDecoderDescriptor,
+                                            broadcastRouteControl),
+                                    getFrontendRoutes(getLiveRouteId(
+                                            frontendDescriptor,
+                                            demuxDescriptor,
+                                            decoderDescriptor,
+                                            outputDescriptor,
+                                            broadcastRouteControl),
+                                            frontendDescriptor,
+                                            spareDemuxDescriptor,
+                                            spareDecoderDescriptor,
+                                            broadcastRouteControl));
                         }
                         /**
                          * RETRIEVE RECORD ROUTES
@@ -212,6 +354,25 @@ public class DVBManager {
                             mLiveRouteCab = getLiveRouteId(frontendDescriptor,
                                     demuxDescriptor, decoderDescriptor,
                                     outputDescriptor, broadcastRouteControl);
+                            lLiveFrontends.put(frontendType,
+                                    frontendDescriptor);
+                        } else if (lSpare) {
+                            mNeighbourTuner.setFrontends(SourceType.CAB,
+                                    getFrontendRoutes(mLiveRouteCab,
+                                            lLiveFrontends.get(frontendType),
+                                            spareDemuxDescriptor,
+                                            spareDecoderDescriptor,
+                                            broadcastRouteControl),
+                                    getFrontendRoutes(getLiveRouteId(
+                                            frontendDescriptor,
+                                            demuxDescriptor,
+                                            decoderDescriptor,
+                                            outputDescriptor,
+                                            broadcastRouteControl),
+                                            frontendDescriptor,
+                                            spareDemuxDescriptor,
+                                            spareDecoderDescriptor,
+                                            broadcastRouteControl));
                         }
                         /**
                          * RETRIEVE RECORD ROUTES
@@ -231,6 +392,25 @@ public class DVBManager {
                             mLiveRouteTer = getLiveRouteId(frontendDescriptor,
                                     demuxDescriptor, decoderDescriptor,
                                     outputDescriptor, broadcastRouteControl);
+                            lLiveFrontends.put(frontendType,
+                                    frontendDescriptor);
+                        } else if (lSpare) {
+                            mNeighbourTuner.setFrontends(SourceType.TER,
+                                    getFrontendRoutes(mLiveRouteTer,
+                                            lLiveFrontends.get(frontendType),
+                                            spareDemuxDescriptor,
+                                            spareDecoderDescriptor,
+                                            broadcastRouteControl),
+                                    getFrontendRoutes(getLiveRouteId(
+                                            frontendDescriptor,
+                                            demuxDescriptor,
+                                            decoderDescriptor,
+                                            outputDescriptor,
+                                            broadcastRouteControl),
+                                            frontendDescriptor,
+                                            spareDemuxDescriptor,
+                                            spareDecoderDescriptor,
+                                            broadcastRouteControl));
                         }
                         /**
                          * RETRIEVE RECORD ROUTES
@@ -281,6 +461,101 @@ public class DVBManager {
         }
         Log.d(TAG, "mLiveRouteTer=" + mLiveRouteTer + ", mLiveRouteCab="
                 + mLiveRouteCab + ", mLiveRouteIp=" + mLiveRouteIp);
+        Log.d(TAG, mNeighbourTuner.toString());
+    }
+
+    /**
+     * Second demux for spare live routes.
+     * 
+     * @return Demux other than the live one, or null if there is none.
+     */
+    private static RouteDemuxDescriptor getSpareDemuxDescriptor(
+            IBroadcastRouteControl routeControl,
+            RouteDemuxDescriptor liveDemuxDescriptor) {
+        try {
+            RouteDemuxDescriptor lDescriptor = routeControl
+                    .getDemuxDescriptor(1);
+            if (lDescriptor != null
+                    && lDescriptor.getDemuxId() != liveDemuxDescriptor
+                            .getDemuxId()) {
+                return lDescriptor;
+            }
+        } catch (RuntimeException e) {
+            Log.d(TAG, "There is no spare demux", e);
+        }
+        return null;
+    }
+
+    /**
+     * Second decoder for spare live routes.
+     * 
+     * @return Decoder other than the live one, or null if there is none.
+     */
+    private static RouteDecoderDescriptor getSpareDecoderDescriptor(
+            ICommonRouteControl routeControl,
+            RouteDecoderDescriptor liveDecoderDescriptor) {
+        try {
+            RouteDecoderDescriptor lDescriptor = routeControl
+                    .getDecoderDescriptor(1);
+            if (lDescriptor != null
+                    && lDescriptor.getDecoderId() != liveDecoderDescriptor
+                            .getDecoderId()) {
+                return lDescriptor;
+            }
+        } catch (RuntimeException e) {
+            Log.d(TAG, "There is no spare decoder", e);
+        }
+        return null;
+    }
+
+    /**
+     * Check if live routes of all given frontend types are already found.
+     */
+    private boolean hasLiveRoutes(EnumSet<RouteFrontendType> frontendTypes) {
+        for (RouteFrontendType frontendType : frontendTypes) {
+            switch (frontendType) {
+                case SAT:
+                    if (mLiveRouteSat == -1) {
+                        return false;
+                    }
+                    break;
+                case CAB:
+                    if (mLiveRouteCab == -1) {
+                        return false;
+                    }
+                    break;
+                case TER:
+                    if (mLiveRouteTer == -1) {
+                        return false;
+                    }
+                    break;
+                case IP:
+                    if (mLiveRouteIp == -1) {
+                        return false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Routes of a frontend used for pre-tuning.
+     * 
+     * @param liveRoute
+     *        Route of the frontend on the live demux and decoder.
+     */
+    private static NeighbourTuner.FrontendRoutes getFrontendRoutes(
+            int liveRoute, RouteFrontendDescriptor fDescriptor,
+            RouteDemuxDescriptor spareDemuxDescriptor,
+            RouteDecoderDescriptor spareDecoderDescriptor,
+            IBroadcastRouteControl routeControl) {
+        return new NeighbourTuner.FrontendRoutes(liveRoute,
+                routeControl.getLiveRoute(fDescriptor.getFrontendId(),
+                        spareDemuxDescriptor.getDemuxId(),
+                        spareDecoderDescriptor.getDecoderId()));
     }
 
     /**
@@ -309,11 +584,14 @@ public class DVBManager {
     public void stopDTV() throws InternalException {
         mPvrManager.unregisterPvrCallback();
         mReminderManager.unregisterCallback();
+        mEpgLoader.quit();
+        mEpgEventListPool.release();
         mDTVManager.getEpgControl().releaseEventList(mEPGFilterID);
         mDTVManager.getEpgControl().unregisterCallback(mEPGCallBack,
                 mEPGFilterID);
         PvrCallback.destroyInstance();
         ReminderCallback.destroyInstance();
+        mNeighbourTuner.release();
         mDTVManager.getServiceControl().stopService(mCurrentLiveRoute);
         sInstance = null;
     }
@@ -363,49 +641,122 @@ public class DVBManager {
      */
     public ChannelInfo changeChannelByNumber(int channelNumber)
             throws InternalException {
-        int listSize = getChannelListSize();
+        ChannelLineup lLineup = getChannelLineup();
+        int listSize = lLineup.size();
         if (listSize == 0) {
             return null;
         }
         channelNumber = (channelNumber + listSize) % listSize;
-        int numberOfDtvChannels = listSize
-                - (mLiveRouteIp == -1 ? 0 : DTVActivity.sIpChannels.size());
+        mZapStatistics.zapStarted();
         /** For regular DVB channel. */
-        if (channelNumber < numberOfDtvChannels) {
-            ServiceDescriptor desiredService = mDTVManager.getServiceControl()
-                    .getServiceDescriptor(
-                            mCurrentListIndex,
-                            ipAndSomeOtherTunerType ? channelNumber + 1
-                                    : channelNumber);
+        if (!lLineup.isIpChannel(channelNumber)) {
+            ServiceDescriptor desiredService = getServiceDescriptor(lLineup
+                    .getServiceIndex(channelNumber));
             /** Channel is Scrambled Toast. */
             if (desiredService.isScrambled()) {
                 mDVBStatus.channelIsScrambled();
             }
-            int route = getActiveRouteByServiceType(desiredService
-                    .getSourceType());
-            if (route == -1) {
-                return null;
+            SourceType lSourceType = desiredService.getSourceType();
+            int lServiceIndex = lLineup.getServiceIndex(channelNumber);
+            /** Frontend of a pre-tuned service is already locked. */
+            int route = mNeighbourTuner.take(mCurrentListIndex,
+                    lServiceIndex);
+            if (route != -1) {
+                mZapStatistics.routeFound(lSourceType);
+                /**
+                 * Pre-tuned frontend becomes the live one, the live decoder
+                 * is freed before it is started there.
+                 */
+                if (mCurrentLiveRoute != -1) {
+                    mDTVManager.getServiceControl().stopService(
+                            mCurrentLiveRoute);
+                }
+                setLiveRoute(lSourceType, route);
+                mCurrentLiveRoute = route;
+                mDTVManager.getServiceControl().startService(route,
+                        mCurrentListIndex, lServiceIndex);
+                mNeighbourTuner.release();
+                mZapStatistics.serviceStarted();
+            } else {
+                route = getActiveRouteByServiceType(lSourceType);
+                if (route == -1) {
+                    return null;
+                }
+                mZapStatistics.routeFound(lSourceType);
+                mCurrentLiveRoute = route;
+                mDTVManager.getServiceControl().startService(route,
+                        mCurrentListIndex, lServiceIndex);
+                mZapStatistics.serviceStarted();
             }
-            mCurrentLiveRoute = route;
-            mDTVManager.getServiceControl()
-                    .startService(
-                            route,
-                            mCurrentListIndex,
-                            ipAndSomeOtherTunerType ? channelNumber + 1
-                                    : channelNumber);
         }
         /** For IP. */
         else {
+            mZapStatistics.routeFound(SourceType.IP);
             mCurrentLiveRoute = mLiveRouteIp;
             mCurrentChannelNumberIp = channelNumber;
-            mDTVManager.getServiceControl().zapURL(
-                    mLiveRouteIp,
-                    DTVActivity.sIpChannels.get(
-                            channelNumber - numberOfDtvChannels).getUrl());
+            mDTVManager.getServiceControl().zapURL(mLiveRouteIp,
+                    lLineup.getIpChannel(channelNumber).getUrl());
+            mZapStatistics.serviceStarted();
         }
+        int lPreviousChannel = mLastChannelNumber;
+        mLastChannelNumber = channelNumber;
+        preTuneNeighbour(lLineup, lPreviousChannel, channelNumber);
         return getChannelInfo(channelNumber);
     }
 
+    /**
+     * Make a route the live route of its DVB source type, used when frontends
+     * change roles.
+     *
+     * @param sourceType
+     *        Source type of the route.
+     * @param route
+     *        Route on the live demux and decoder.
+     */
+    private void setLiveRoute(SourceType sourceType, int route) {
+        switch (sourceType) {
+            case CAB: {
+                mLiveRouteCab = route;
+                break;
+            }
+            case TER: {
+                mLiveRouteTer = route;
+                break;
+            }
+            case SAT: {
+                mLiveRouteSat = route;
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Tune spare frontend to the channel which is likely to be watched next.
+     *
+     * @param lineup
+     *        Channel list in use.
+     * @param previousChannel
+     *        Channel watched before, -1 if unknown.
+     * @param channel
+     *        Channel watched now.
+     */
+    private void preTuneNeighbour(ChannelLineup lineup, int previousChannel,
+            int channel) {
+        if (!mNeighbourTuner.isEnabled()) {
+            return;
+        }
+        int lNext = NeighbourTuner.predict(previousChannel, channel,
+                lineup.size());
+        if (lNext == -1 || lineup.isIpChannel(lNext)) {
+            return;
+        }
+        int lServiceIndex = lineup.getServiceIndex(lNext);
+        mNeighbourTuner.preTune(getServiceDescriptor(lServiceIndex)
+                .getSourceType(), mCurrentListIndex, lServiceIndex);
+    }
+
     /**
      * Return route by service type.
      * 
@@ -462,43 +813,127 @@ public class DVBManager {
      * Get Size of Channel List.
      */
     public int getChannelListSize() {
+        return getChannelLineup().size();
+    }
+
+    /**
+     * Get channel list, it is made again only when service list or IP
+     * channels change. Size of the service list is not asked here, it is
+     * checked by {@link #validateServiceList()}.
+     */
+    public ChannelLineup getChannelLineup() {
+        ChannelLineup lLineup = mChannelLineup;
+        ArrayList<IPService> lIpChannels = mLiveRouteIp == -1 ? null
+                : DTVActivity.sIpChannels;
+        if (lLineup != null
+                && lLineup.isMadeFor(mCurrentListIndex, lIpChannels)) {
+            return lLineup;
+        }
         int serviceCount = mDTVManager.getServiceControl().getServiceListCount(
                 mCurrentListIndex);
+        mServiceDescriptors.validate(mCurrentListIndex, serviceCount);
+        int lListSize = serviceCount;
+        /** If there is IP first element in service list is DUMMY. */
         if (ipAndSomeOtherTunerType) {
-            serviceCount += DTVActivity.sIpChannels == null ? 0
-                    : DTVActivity.sIpChannels.size();
             serviceCount--;
         } else
         /** Only IP. */
         if (mLiveRouteIp != -1) {
-            serviceCount = DTVActivity.sIpChannels == null ? 0
-                    : DTVActivity.sIpChannels.size();
+            serviceCount = 0;
+        }
+        int lOffset = getServiceIndexOffset();
+        int lId = mCurrentListIndex;
+        for (int i = 0; i < serviceCount; i++) {
+            lId = 31 * lId + getServiceDescriptor(i + lOffset)
+                    .getMasterIndex();
+        }
+        lLineup = new ChannelLineup(mCurrentListIndex, lId, lListSize,
+                serviceCount, lOffset, lIpChannels);
+        mChannelLineup = lLineup;
+        return lLineup;
+    }
+
+    /**
+     * Descriptor of a service in current list, from cache.
+     * 
+     * @param serviceIndex
+     *        Index of the service in the service list.
+     */
+    private ServiceDescriptor getServiceDescriptor(int serviceIndex) {
+        return mServiceDescriptors.get(mCurrentListIndex, serviceIndex);
+    }
+
+    /**
+     * Check size of the current service list and forget everything cached
+     * for it when the size changed. Middleware does not report changes of
+     * the list, so it is checked before EPG is loaded and when channel list
+     * is opened.
+     * 
+     * @return True if the list changed.
+     */
+    public boolean validateServiceList() {
+        int lServiceCount = mDTVManager.getServiceControl()
+                .getServiceListCount(mCurrentListIndex);
+        ChannelLineup lLineup = mChannelLineup;
+        boolean lLineupChanged = lLineup != null
+                && lLineup.getListIndex() == mCurrentListIndex
+                && lLineup.getServiceCount() != lServiceCount;
+        if (mServiceDescriptors.validate(mCurrentListIndex, lServiceCount)
+                || lLineupChanged) {
+            invalidateServiceList();
+            return true;
         }
-        return serviceCount;
+        return false;
+    }
+
+    /**
+     * Forget cached service descriptors, channel list and EPG days, to be
+     * called when service list is changed.
+     */
+    public void invalidateServiceList() {
+        mServiceDescriptors.invalidate();
+        mChannelLineup = null;
+        /** Rows of cached days belong to the old channels. */
+        mEpgDayCache.clear();
+        /** Pre-tuned service index may point to another service now. */
+        mNeighbourTuner.release();
+        mLastChannelNumber = -1;
+    }
+
+    /**
+     * Durations of channel changes per source type.
+     */
+    public ZapStatistics getZapStatistics() {
+        return mZapStatistics;
+    }
+
+    /**
+     * Pre-tuning of spare frontends, it is off until enabled.
+     */
+    public NeighbourTuner getNeighbourTuner() {
+        return mNeighbourTuner;
+    }
+
+    /**
+     * Cached service descriptors, for hit and miss statistics.
+     */
+    public ServiceDescriptorCache getServiceDescriptorCache() {
+        return mServiceDescriptors;
     }
 
     /**
      * Get Channel Names.
      */
     public ArrayList<String> getChannelNames() {
-        ArrayList<String> channelNames = new ArrayList<String>();
-        String channelName = "";
-        int channelListSize = getChannelListSize()
-                - (mLiveRouteIp == -1 ? 0 : DTVActivity.sIpChannels.size());
-        IServiceControl serviceControl = mDTVManager.getServiceControl();
-        /** If there is IP first element in service list is DUMMY. */
-        channelListSize = ipAndSomeOtherTunerType ? channelListSize + 1
-                : channelListSize;
-        for (int i = ipAndSomeOtherTunerType ? 1 : 0; i < channelListSize; i++) {
-            channelName = serviceControl.getServiceDescriptor(
-                    mCurrentListIndex, i).getName();
-            channelNames.add(channelName);
+        ChannelLineup lLineup = getChannelLineup();
+        ArrayList<String> channelNames = new ArrayList<String>(lLineup.size());
+        for (int i = 0; i < lLineup.getDvbChannelCount(); i++) {
+            channelNames.add(getServiceDescriptor(lLineup.getServiceIndex(i))
+                    .getName());
         }
         /** Add IP. */
-        if (mLiveRouteIp != -1) {
-            for (int i = 0; i < DTVActivity.sIpChannels.size(); i++) {
-                channelNames.add(DTVActivity.sIpChannels.get(i).getName());
-            }
+        for (int i = lLineup.getDvbChannelCount(); i < lLineup.size(); i++) {
+            channelNames.add(lLineup.getIpChannel(i).getName());
         }
         return channelNames;
     }
@@ -524,53 +959,156 @@ public class DVBManager {
      */
     public ChannelInfo getChannelInfo(int channelNumber)
             throws IllegalArgumentException {
-        if (channelNumber < 0 || channelNumber >= getChannelListSize()) {
+        ChannelLineup lLineup = getChannelLineup();
+        if (channelNumber < 0 || channelNumber >= lLineup.size()) {
             throw new IllegalArgumentException("Illegal channel index! "
-                    + channelNumber + ", List size is: " + getChannelListSize());
+                    + channelNumber + ", List size is: " + lLineup.size());
         }
-        int numberOfDtvChannels = getChannelListSize()
-                - (mLiveRouteIp == -1 ? 0 : DTVActivity.sIpChannels.size());
         /** Return DTV channel. */
-        if (channelNumber < numberOfDtvChannels) {
-            String channelName = mDTVManager
-                    .getServiceControl()
-                    .getServiceDescriptor(
-                            mCurrentListIndex,
-                            ipAndSomeOtherTunerType ? channelNumber + 1
-                                    : channelNumber).getName();
+        if (!lLineup.isIpChannel(channelNumber)) {
+            String channelName = getServiceDescriptor(
+                    lLineup.getServiceIndex(channelNumber)).getName();
             return new ChannelInfo(channelNumber + 1, channelName);
         }
         /** Return IP channel. */
         else {
-            return new ChannelInfo(channelNumber + 1, DTVActivity.sIpChannels
-                    .get(channelNumber - numberOfDtvChannels).getName());
+            return new ChannelInfo(channelNumber + 1, lLineup.getIpChannel(
+                    channelNumber).getName());
         }
     }
 
-    public void setGenreFilter(EpgEventGenre genre) {
-        mGenre = genre;
+    /**
+     * Set filter of shown EPG events. Loaded events are filtered in memory and
+     * listener is notified, nothing is acquired again.
+     */
+    public void setEpgFilter(EpgFilter filter) {
+        EpgState lShown;
+        EpgState lState;
+        do {
+            lShown = mEpgState.get();
+            lState = lShown.withFilter(filter);
+        } while (!mEpgState.compareAndSet(lShown, lState));
+        notifyEpgState(lShown, lState, null);
+    }
+
+    /**
+     * Shown EPG events. Readers keep the returned state for a whole pass, it
+     * never changes.
+     */
+    public EpgState getEpgState() {
+        return mEpgState.get();
+    }
+
+    /**
+     * Show loaded EPG events. If the same day is shown already, listener gets
+     * only rows that are drawn differently. Called on loader thread only.
+     * 
+     * @param grid
+     *        Unfiltered events of the shown day.
+     * @return Published state.
+     */
+    private EpgState publishEpgGrid(EpgGrid grid) {
+        /** Whole day is indexed only when it is searched. */
+        mEpgSearchIndex.setGrid(grid, getServiceIndexOffset());
+        EpgState lShown;
+        EpgState lState;
+        /** Filter can be changed on UI thread meanwhile. */
+        do {
+            lShown = mEpgState.get();
+            lState = lShown.withGrid(grid);
+        } while (!mEpgState.compareAndSet(lShown, lState));
+        notifyEpgState(lShown, lState, null);
+        return lState;
+    }
+
+    /**
+     * Show acquired rows of a day. Other rows keep what is shown already for
+     * the same day, for example events restored from a snapshot, and only
+     * acquired rows that changed are drawn again. Called on loader thread
+     * only.
+     * 
+     * @param grid
+     *        Grid holding new events of the rows.
+     * @param channels
+     *        Acquired rows.
+     * @return Published state.
+     */
+    private EpgState publishEpgRows(EpgGrid grid, BitSet channels) {
+        EpgState lShown;
+        EpgState lState;
+        do {
+            lShown = mEpgState.get();
+            if (!lShown.isSameDay(grid)) {
+                return publishEpgGrid(grid);
+            }
+            lState = lShown.withGrid(lShown.getGrid().replaceChannels(
+                    channels, grid));
+        } while (!mEpgState.compareAndSet(lShown, lState));
+        mEpgSearchIndex.replaceChannels(lState.getGrid(), grid, channels,
+                getServiceIndexOffset());
+        notifyEpgState(lShown, lState, channels);
+        return lState;
+    }
+
+    /**
+     * Tell listener about a published state.
+     * 
+     * @param shown
+     *        State that the published one replaced.
+     * @param state
+     *        Published state.
+     * @param channels
+     *        Rows that can differ, null for all rows.
+     */
+    private void notifyEpgState(EpgState shown, EpgState state,
+            BitSet channels) {
+        OnLoadFinishedListener lListener = mLoadFinishedListener;
+        if (lListener == null || state.getVisibleGrid() == null) {
+            return;
+        }
+        /** Same day is drawn again only in rows that look different. */
+        if (shown.isSameDay(state.getGrid())) {
+            lListener.onRowsLoaded(mEpgDate, state, state.getVisibleGrid()
+                    .diffChannels(shown.getVisibleGrid(), channels));
+        } else {
+            lListener.onLoadFinished(mEpgDate, state);
+        }
     }
 
     /**
-     * Load Events From MW.
+     * Find events of the shown day by words of their name or description.
+     * Only events matching active filter are returned.
+     * 
+     * @param query
+     *        Words typed by user, the last one may be unfinished.
+     * @param maxHits
+     *        Maximum number of returned events.
+     * @return Found events, best match first.
+     */
+    public ArrayList<EpgSearchIndex.Hit> searchEpgEvents(String query,
+            int maxHits) {
+        return mEpgSearchIndex.search(query, mEpgState.get().getFilter(),
+                maxHits);
+    }
+
+    /**
+     * Difference between service index and channel index.
+     */
+    private int getServiceIndexOffset() {
+        return ipAndSomeOtherTunerType ? 1 : 0;
+    }
+
+    /**
+     * Load Events From MW. Any load that is running is stopped at the next
+     * channel and its result is dropped. Load runs on EPG loader thread, the
+     * day is changed at once, so quick day switches still add up.
      * 
      * @param day
      *        -Load EPG for previous or current or next day.
-     * @param channelListSize
-     *        Number of services in channel list
-     * @throws ParseException
-     * @throws RemoteException
      */
-    public synchronized void loadEvents(int day) throws ParseException {
-        loadInProgress = true;
-        Date lDrawingBeginTime = null;
-        Date lDrawingEndTime = null;
-        Date lDrawingParsedBeginTime = null;
-        Date lDrawingParsedEndTime = null;
-        EpgEvent lEvent = null;
-        int lEpgEventsSize = 0;
-        int lEventDay = -1;
-        TimeDate lCurrentTime = mDTVManager.getSetupControl().getTimeDate();
+    public void loadEvents(int day) {
+        mEpgGeneration.incrementAndGet();
+        captureEpgFocus();
         switch (day) {
             case LOAD_EPG_PREVIOUS_DAY: {
                 if (mEPGDay > 0) {
@@ -582,7 +1120,8 @@ public class DVBManager {
             }
             case LOAD_EPG_CURRENT_DAY: {
                 /** Do Nothing, Don't Change Index. */
-                break;
+                mEpgLoader.requestReload();
+                return;
             }
             case LOAD_EPG_NEXT_DAY: {
                 if (mEPGDay < MAX_EPG_DAYS) {
@@ -593,157 +1132,619 @@ public class DVBManager {
                 break;
             }
         }
-        Calendar lCalendar = lCurrentTime.getCalendar();
-        lCalendar.add(Calendar.DATE, mEPGDay);
-        TimeDate lEpgStartTime = new TimeDate(1, 1, 0,
-                lCalendar.get(Calendar.DAY_OF_MONTH),
-                lCalendar.get(Calendar.MONTH) + 1, lCalendar.get(Calendar.YEAR));
-        TimeDate lEpgEndTime = new TimeDate(0, 0, 0,
-                lCalendar.get(Calendar.DAY_OF_MONTH),
-                lCalendar.get(Calendar.MONTH) + 1, lCalendar.get(Calendar.YEAR));
-        mTimeEventHolders = new TimeEvent[EPGActivity.HOURS];
-        for (int i = 0; i < EPGActivity.HOURS; i++) {
-            mTimeEventHolders[i] = new TimeEvent(getChannelListSize());
+        mEpgLoader.requestDaySwitch();
+    }
+
+    /**
+     * Load events of selected day if no newer load was requested meanwhile.
+     * Called on loader thread only, which is the only writer of loaded
+     * events.
+     * 
+     * @param daySwitched
+     *        True if another day was selected, it is shown from cache if
+     *        possible.
+     * @param generation
+     *        Generation of the request.
+     */
+    private void loadEvents(boolean daySwitched, int generation)
+            throws ParseException {
+        if (isEpgLoadSuperseded(generation)) {
+            return;
         }
+        validateServiceList();
+        Calendar lCalendar = getEpgDayCalendar(mEPGDay);
+        int lDayStartMinute = toEpochMinute(lCalendar.getTimeInMillis());
+        mEpgDayCache.setFocusDay(lDayStartMinute);
         /** Create Time Filter */
+        mEpgTimeFilter = createTimeFilter(lCalendar);
+        mEpgDate = "Display date: " + lCalendar.get(Calendar.DAY_OF_MONTH)
+                + "/" + (lCalendar.get(Calendar.MONTH) + 1) + "/"
+                + lCalendar.get(Calendar.YEAR);
+        /** Switching to another day, serve it from cache if possible. */
+        if (daySwitched) {
+            EpgGrid lCachedGrid = mEpgDayCache.get(lDayStartMinute);
+            if (lCachedGrid != null) {
+                publishEpgGrid(lCachedGrid);
+                BitSet lStaleChannels = mEpgDayCache
+                        .takeStaleChannels(lDayStartMinute);
+                for (int i = lStaleChannels.nextSetBit(0); i >= 0; i = lStaleChannels
+                        .nextSetBit(i + 1)) {
+                    mEpgLoader.requestServiceReload(ipAndSomeOtherTunerType ? i + 1
+                            : i);
+                }
+                return;
+            }
+        }
+        /** Show stored day while it is acquired again. */
+        EpgGrid lShownGrid = mEpgState.get().getGrid();
+        EpgSnapshot lSnapshot = mEpgSnapshot;
+        if (lSnapshot != null
+                && (lShownGrid == null || lShownGrid
+                        .getDayStartMinute() != lDayStartMinute)) {
+            ChannelLineup lLineup = getChannelLineup();
+            EpgGrid lStoredGrid = lSnapshot.read(lDayStartMinute,
+                    lLineup.size(), lLineup.getId());
+            if (lStoredGrid != null) {
+                publishEpgGrid(lStoredGrid);
+            }
+        }
+        EpgGrid lGrid = acquireDay(lDayStartMinute, mEpgTimeFilter,
+                generation, true);
+        if (lGrid == null) {
+            return;
+        }
+        mEpgDayCache.put(lGrid);
+        Log.d(TAG, "Loaded " + lGrid.getEventCount() + " EPG events, "
+                + mEpgStringPool + ", " + mEpgDayCache + ", "
+                + mServiceDescriptors);
+        /** Rows are already shown while they were acquired. */
+        lShownGrid = mEpgState.get().getGrid();
+        if (lShownGrid == null
+                || lShownGrid.getDayStartMinute() != lDayStartMinute) {
+            publishEpgGrid(lGrid);
+        }
+        writeEpgSnapshot(lGrid);
+    }
+
+    /**
+     * Set directory where loaded EPG days are stored, so they can be shown
+     * immediately after next start.
+     * 
+     * @param directory
+     *        Application files directory.
+     */
+    public void setEpgSnapshotDirectory(File directory) {
+        mEpgSnapshot = new EpgSnapshot(directory, mEpgStringPool);
+    }
+
+    private void writeEpgSnapshot(EpgGrid grid) {
+        EpgSnapshot lSnapshot = mEpgSnapshot;
+        if (lSnapshot != null) {
+            lSnapshot.deleteOlderThan(toEpochMinute(getEpgDayCalendar(0)
+                    .getTimeInMillis()));
+            lSnapshot.write(grid);
+        }
+    }
+
+    /**
+     * Load events of a day into cache without showing them, so later switch
+     * to that day is instant.
+     * 
+     * @param epgDay
+     *        Day to load, 0 is today.
+     */
+    public void loadDayIntoCache(int epgDay) {
+        int lGeneration = mEpgGeneration.get();
+        if (epgDay < 0 || epgDay > MAX_EPG_DAYS) {
+            return;
+        }
+        Calendar lCalendar = getEpgDayCalendar(epgDay);
+        int lDayStartMinute = toEpochMinute(lCalendar.getTimeInMillis());
+        if (mEpgDayCache.get(lDayStartMinute) != null) {
+            return;
+        }
+        Log.d(TAG, "Prefetching EPG day " + epgDay);
+        EpgGrid lGrid = acquireDay(lDayStartMinute,
+                createTimeFilter(lCalendar), lGeneration, false);
+        if (lGrid == null) {
+            return;
+        }
+        mEpgDayCache.put(lGrid);
+        writeEpgSnapshot(lGrid);
+    }
+
+    /**
+     * Request background load of the day next to the shown one.
+     * 
+     * @param day
+     *        LOAD_EPG_PREVIOUS_DAY or LOAD_EPG_NEXT_DAY.
+     */
+    public void prefetchEvents(int day) {
+        int lEpgDay = mEPGDay + day;
+        if (day == LOAD_EPG_CURRENT_DAY || lEpgDay < 0
+                || lEpgDay > MAX_EPG_DAYS || isDayCached(day)) {
+            return;
+        }
+        captureEpgFocus();
+        mEpgLoader.requestPrefetch(lEpgDay);
+    }
+
+    /**
+     * Check if the day next to the shown one is already loaded.
+     * 
+     * @param day
+     *        LOAD_EPG_PREVIOUS_DAY or LOAD_EPG_NEXT_DAY.
+     */
+    public boolean isDayCached(int day) {
+        int lEpgDay = Math.max(0, Math.min(MAX_EPG_DAYS, mEPGDay + day));
+        return mEpgDayCache.get(toEpochMinute(getEpgDayCalendar(lEpgDay)
+                .getTimeInMillis())) != null;
+    }
+
+    /**
+     * Calendar set to midnight of EPG day.
+     * 
+     * @param epgDay
+     *        Day offset from today.
+     */
+    private Calendar getEpgDayCalendar(int epgDay) {
+        Calendar lCalendar = mDTVManager.getSetupControl().getTimeDate()
+                .getCalendar();
+        lCalendar.add(Calendar.DATE, epgDay);
+        lCalendar.set(Calendar.HOUR_OF_DAY, 0);
+        lCalendar.set(Calendar.MINUTE, 0);
+        lCalendar.set(Calendar.SECOND, 0);
+        lCalendar.set(Calendar.MILLISECOND, 0);
+        return lCalendar;
+    }
+
+    private EpgTimeFilter createTimeFilter(Calendar calendar) {
+        TimeDate lEpgStartTime = new TimeDate(1, 1, 0,
+                calendar.get(Calendar.DAY_OF_MONTH),
+                calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.YEAR));
+        TimeDate lEpgEndTime = new TimeDate(0, 0, 0,
+                calendar.get(Calendar.DAY_OF_MONTH),
+                calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.YEAR));
         EpgTimeFilter lEpgTimeFilter = new EpgTimeFilter();
         lEpgTimeFilter.setTime(lEpgStartTime, lEpgEndTime);
-        /** Make filter list by time. */
-        mDTVManager.getEpgControl().setFilter(mEPGFilterID, lEpgTimeFilter);
+        return lEpgTimeFilter;
+    }
+
+    /**
+     * Set rows of EPG list that are shown, they are acquired first.
+     * 
+     * @param firstChannel
+     *        Index of the first visible channel.
+     * @param channelCount
+     *        Number of visible channels.
+     */
+    public void setEpgViewport(int firstChannel, int channelCount) {
+        mEpgViewportFirst = firstChannel;
+        mEpgViewportCount = channelCount;
+    }
+
+    /**
+     * Remember channel watched now for a load that is requested, loads
+     * start around it until EPG list is shown. Called on UI thread, so
+     * loader thread does not query middleware for it.
+     */
+    private void captureEpgFocus() {
+        if (mEpgViewportFirst < 0) {
+            mEpgFocusedChannel = getCurrentChannelNumber();
+        }
+    }
+
+    /**
+     * Order of channels in which events are acquired: visible rows with a
+     * margin go first, then other rows by distance from them.
+     * 
+     * @param count
+     *        Number of channels with EPG.
+     * @param order
+     *        Filled with channel indexes.
+     * @return Number of channels in visible rows and margin.
+     */
+    private int getChannelLoadOrder(int count, int[] order) {
+        int lFirst = mEpgViewportFirst;
+        int lVisible = mEpgViewportCount;
+        if (lFirst < 0) {
+            lVisible = DEFAULT_EPG_VIEWPORT_ROWS;
+            lFirst = Math.max(0, mEpgFocusedChannel - lVisible / 2);
+        }
+        int lLow = Math.max(0, Math.min(count, lFirst - EPG_VIEWPORT_MARGIN));
+        int lHigh = Math.max(lLow, Math.min(count, lFirst + lVisible
+                + EPG_VIEWPORT_MARGIN));
+        int lSize = 0;
+        for (int i = lLow; i < lHigh; i++) {
+            order[lSize++] = i;
+        }
+        for (int i = 0; lSize < count; i++) {
+            if (lHigh + i < count) {
+                order[lSize++] = lHigh + i;
+            }
+            if (lLow - 1 - i >= 0) {
+                order[lSize++] = lLow - 1 - i;
+            }
+        }
+        return lHigh - lLow;
+    }
+
+    /**
+     * Set how many channels are acquired at the same time. Every acquisition
+     * uses its own middleware event list, so the number must not exceed
+     * event lists middleware can acquire in parallel. Applied from the next
+     * load.
+     * 
+     * @param threads
+     *        Number of parallel acquisitions, 1 acquires channels one by one.
+     */
+    public void setEpgAcquisitionThreads(int threads) {
+        mEpgAcquisitionThreads = Math.max(1, threads);
+    }
+
+    public int getEpgAcquisitionThreads() {
+        return mEpgAcquisitionThreads;
+    }
+
+    /**
+     * Acquire events of all channels for one day.
+     * 
+     * @param dayStartMinute
+     *        Epoch minute of midnight of the day.
+     * @param timeFilter
+     *        Time filter of the day.
+     * @param generation
+     *        Generation of the load, acquisition stops when a newer load is
+     *        requested.
+     * @param publishRows
+     *        Show acquired rows in batches while the day is acquired,
+     *        visible rows first.
+     * @return Acquired grid or null if load is superseded.
+     */
+    private EpgGrid acquireDay(int dayStartMinute, EpgTimeFilter timeFilter,
+            int generation, boolean publishRows) {
+        ChannelLineup lLineup = getChannelLineup();
+        EpgGridBuilder lBuilder = new EpgGridBuilder(lLineup.size(),
+                dayStartMinute, mEpgStringPool);
+        lBuilder.setLineupId(lLineup.getId());
+        lBuilder.ensureCapacity(mEpgEventCountHint, mEpgSlotCountHint);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(dayStartMinute,
+                TimeZone.getDefault());
         /** Remove IP Channels, there is not EPG for that type. */
-        int count = getChannelListSize()
-                - (mLiveRouteIp == -1 ? 0 : DTVActivity.sIpChannels.size());
-        for (int channelIndex = 0; channelIndex < count; channelIndex++) {
-            /** Create Service Filter. */
-            EpgServiceFilter lEpgServiceFilter = new EpgServiceFilter();
-            lEpgServiceFilter
-                    .setServiceIndex(ipAndSomeOtherTunerType ? channelIndex + 1
-                            : channelIndex);
-            /** Set Service Filter. */
-            mDTVManager.getEpgControl().setFilter(mEPGFilterID,
-                    lEpgServiceFilter);
-            /** Create Genre Filter. */
-            EpgGenreFilter genreFilter = new EpgGenreFilter();
-            EnumSet<EpgEventGenre> set = EnumSet.of(mGenre);
-            genreFilter.setGenre(set);
-            /** Set Genre Filter. */
-            mDTVManager.getEpgControl().setFilter(mEPGFilterID, genreFilter);
-            /** Reset Filter */
-            mDTVManager.getEpgControl().startAcquisition(mEPGFilterID);
-            lEpgEventsSize = mDTVManager
-                    .getEpgControl()
-                    .getAvailableEventsNumber(
-                            mEPGFilterID,
-                            mDTVManager
-                                    .getServiceControl()
-                                    .getServiceDescriptor(
-                                            mCurrentListIndex,
-                                            ipAndSomeOtherTunerType ? channelIndex + 1
-                                                    : channelIndex)
-                                    .getMasterIndex());
-            lEventDay = -1;
-            for (int eventIndex = 0; eventIndex < lEpgEventsSize; eventIndex++) {
-                lEvent = mDTVManager.getEpgControl().getRequestedEvent(
-                        mEPGFilterID,
-                        ipAndSomeOtherTunerType ? channelIndex + 1
-                                : channelIndex, eventIndex);
-                lDrawingBeginTime = lEvent.getStartTime().getCalendar()
-                        .getTime();
-                lDrawingEndTime = lEvent.getEndTime().getCalendar().getTime();
-                if (lEventDay == -1) {
-                    lEventDay = lDrawingBeginTime.getDay();
+        int count = lLineup.getDvbChannelCount();
+        int[] lOrder = new int[count];
+        int lVisibleRows = getChannelLoadOrder(count, lOrder);
+        /** Pool is resized here so no acquisition uses it meanwhile. */
+        mEpgEventListPool.setSize(mEpgAcquisitionThreads);
+        int lWorkers = mEpgEventListPool.getSize();
+        /** Make filter list by time. */
+        mDTVManager.getEpgControl().setFilter(mEPGFilterID, timeFilter);
+        for (int worker = 0; worker < lWorkers; worker++) {
+            mDTVManager.getEpgControl().setFilter(
+                    mEpgEventListPool.getEventList(worker), timeFilter);
+        }
+        /** Workers put acquired channel to the queue and its events here. */
+        EpgGridBuilder[] lRows = new EpgGridBuilder[count];
+        BlockingQueue<Integer> lAcquiredChannels =
+                new LinkedBlockingQueue<Integer>();
+        AtomicBoolean lCancelled = new AtomicBoolean(false);
+        ArrayList<Future<Void>> lFutures = startAcquisitionWorkers(lWorkers,
+                lBuilder, lSplitter, lOrder, lRows, lAcquiredChannels,
+                lCancelled);
+        BitSet lPendingRows = new BitSet(count);
+        /**
+         * Rows that are published go to a batch first, so every publish
+         * builds only the new rows and merges them into the shown grid.
+         */
+        EpgGridBuilder lBatch = lBuilder;
+        if (publishRows) {
+            lBatch = new EpgGridBuilder(lLineup.size(), dayStartMinute,
+                    mEpgStringPool);
+            lBatch.setLineupId(lLineup.getId());
+        }
+        long lLastPublishTime = SystemClock.uptimeMillis();
+        try {
+            for (int i = 0; i < count; i++) {
+                if (isEpgLoadSuperseded(generation)) {
+                    return null;
                 }
-                if (lDrawingBeginTime.getDay() == lEventDay) {
-                    if (lDrawingEndTime.getDay() != lEventDay) {
-                        lDrawingEndTime = new Date(lDrawingBeginTime.getYear(),
-                                lDrawingBeginTime.getMonth(),
-                                lDrawingBeginTime.getDay(),
-                                lDrawingBeginTime.getHours(), 59, 0);
-                    }
-                    /** When duration of Event is a few hours.. */
-                    if (lDrawingBeginTime.getHours() < lDrawingEndTime
-                            .getHours()) {
-                        for (int i = 0; i <= lDrawingEndTime.getHours()
-                                - lDrawingBeginTime.getHours(); i++) {
-                            /** If Event is longer than 1h. */
-                            /** Draw from 'lDrawingBeginTime' to next hour. */
-                            if (i == 0) {
-                                lDrawingParsedBeginTime = lDrawingBeginTime;
-                                lDrawingParsedEndTime = new Date(
-                                        lDrawingBeginTime.getYear(),
-                                        lDrawingBeginTime.getMonth(),
-                                        lDrawingBeginTime.getDay(),
-                                        lDrawingBeginTime.getHours() + 1, 0, 0);
-                            }
-                            /**
-                             * Check is there need to draw end hour, if yes draw
-                             * it from 'lDrawingEndTime.getHour():00' to
-                             * 'lDrawingEndTime.getHour():lDrawingEndTime.getMin
-                             * u t e s ( ) ' .
-                             */
-                            else if (i == lDrawingEndTime.getHours()
-                                    - lDrawingBeginTime.getHours()) {
-                                if (lDrawingEndTime.getMinutes() > 0) {
-                                    lDrawingParsedBeginTime = new Date(
-                                            lDrawingEndTime.getYear(),
-                                            lDrawingEndTime.getMonth(),
-                                            lDrawingEndTime.getDay(),
-                                            lDrawingEndTime.getHours(), 0, 0);
-                                    lDrawingParsedEndTime = lDrawingEndTime;
-                                }
-                            }
-                            /** Draw other. */
-                            else {
-                                lDrawingParsedBeginTime = new Date(
-                                        lDrawingBeginTime.getYear(),
-                                        lDrawingBeginTime.getMonth(),
-                                        lDrawingBeginTime.getDay(),
-                                        lDrawingBeginTime.getHours() + i, 0, 0);
-                                lDrawingParsedEndTime = new Date(
-                                        lDrawingBeginTime.getYear(),
-                                        lDrawingBeginTime.getMonth(),
-                                        lDrawingBeginTime.getDay(),
-                                        lDrawingBeginTime.getHours() + 1 + i,
-                                        0, 0);
-                            }
-                            mTimeEventHolders[lDrawingParsedBeginTime
-                                    .getHours()].addEvent(channelIndex,
-                                    lDrawingParsedBeginTime,
-                                    lDrawingParsedEndTime, lEvent);
-                        }
-                    } else {
-                        /** Event in one hour column. */
-                        mTimeEventHolders[lDrawingBeginTime.getHours()]
-                                .addEvent(channelIndex, lDrawingBeginTime,
-                                        lDrawingEndTime, lEvent);
+                int lChannel;
+                if (lWorkers == 0) {
+                    lChannel = lOrder[i];
+                    loadChannelEvents(lBatch, lSplitter, mEPGFilterID,
+                            lChannel);
+                } else {
+                    /** Rows arrive in order their acquisition finished. */
+                    lChannel = lAcquiredChannels.take();
+                    if (lRows[lChannel] != null) {
+                        lBatch.addAll(lRows[lChannel]);
+                        lRows[lChannel] = null;
                     }
                 }
+                lPendingRows.set(lChannel);
+                /** Visible rows go at once, other rows in batches. */
+                boolean lPublish = i + 1 == lVisibleRows || i + 1 == count;
+                if (i + 1 > lVisibleRows) {
+                    lPublish |= lPendingRows.cardinality()
+                            >= EPG_PUBLISH_BATCH_ROWS
+                            || SystemClock.uptimeMillis() - lLastPublishTime
+                                    >= EPG_PUBLISH_INTERVAL_MILLIS;
+                }
+                if (publishRows && lPublish) {
+                    publishEpgRows(lBatch.build(), lPendingRows);
+                    lBuilder.addAll(lBatch);
+                    lBatch.clear();
+                    lPendingRows = new BitSet(count);
+                    lLastPublishTime = SystemClock.uptimeMillis();
+                }
             }
-            mDTVManager.getEpgControl().stopAcquisition(mEPGFilterID);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lCancelled.set(true);
+            waitForAcquisitionWorkers(lFutures);
         }
-        loadInProgress = false;
-        if (mLoadFinishedListener != null) {
-            mLoadFinishedListener.onLoadFinished("Display date: "
-                    + lCalendar.get(Calendar.DAY_OF_MONTH) + "/"
-                    + (lCalendar.get(Calendar.MONTH) + 1) + "/"
-                    + lCalendar.get(Calendar.YEAR));
+        EpgGrid lGrid = lBuilder.build();
+        mEpgEventCountHint = lGrid.getEventCount();
+        mEpgSlotCountHint = lGrid.getSlotCount();
+        return lGrid;
+    }
+
+    /**
+     * Start workers which acquire channels in parallel. Every worker takes
+     * the next channel of load order, so visible rows are still acquired
+     * first, and acquires it through its own event list.
+     * 
+     * @param workers
+     *        Number of workers, 0 for serial acquisition.
+     * @param dayBuilder
+     *        Builder of the day, only its day and channel count are used.
+     * @param splitter
+     *        Splitter of the day, shared by all workers.
+     * @param order
+     *        Channel indexes in load order.
+     * @param rows
+     *        Filled with events of acquired channels, null if acquisition of
+     *        the channel failed.
+     * @param acquiredChannels
+     *        Receives channel index after its row is filled.
+     * @param cancelled
+     *        Workers stop taking channels when set.
+     * @return Futures of started workers.
+     */
+    private ArrayList<Future<Void>> startAcquisitionWorkers(int workers,
+            final EpgGridBuilder dayBuilder, final EpgSlotSplitter splitter,
+            final int[] order,
+            final EpgGridBuilder[] rows,
+            final BlockingQueue<Integer> acquiredChannels,
+            final AtomicBoolean cancelled) {
+        ArrayList<Future<Void>> lFutures = new ArrayList<Future<Void>>();
+        final AtomicInteger lNextChannel = new AtomicInteger();
+        for (int worker = 0; worker < workers; worker++) {
+            final int lEventList = mEpgEventListPool.getEventList(worker);
+            lFutures.add(mEpgEventListPool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int lNext = lNextChannel.getAndIncrement();
+                    while (!cancelled.get() && lNext < order.length) {
+                        int lChannel = order[lNext];
+                        EpgGridBuilder lRow = new EpgGridBuilder(dayBuilder
+                                .getChannelCount(), dayBuilder
+                                .getDayStartMinute(), mEpgStringPool);
+                        try {
+                            loadChannelEvents(lRow, splitter, lEventList,
+                                    lChannel);
+                            rows[lChannel] = lRow;
+                        } catch (RuntimeException e) {
+                            Log.e(TAG, "EPG acquisition of channel "
+                                    + lChannel + " failed", e);
+                        }
+                        /** Always report, load waits for every channel. */
+                        acquiredChannels.add(lChannel);
+                        lNext = lNextChannel.getAndIncrement();
+                    }
+                    return null;
+                }
+            }));
         }
+        return lFutures;
     }
 
     /**
-     * Reload EPG events,through thread.
+     * Wait until workers stop, event lists can not be used by the next load
+     * before that.
      */
-    public void reLoadEvents() {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
+    private void waitForAcquisitionWorkers(ArrayList<Future<Void>> futures) {
+        boolean lInterrupted = false;
+        for (Future<Void> future : futures) {
+            while (true) {
                 try {
-                    loadEvents(DVBManager.LOAD_EPG_CURRENT_DAY);
-                } catch (ParseException e) {
-                    Log.e(TAG, "There was an error in reloading EPG events.", e);
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    lInterrupted = true;
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "EPG acquisition worker failed", e);
+                    break;
                 }
             }
-        }).start();
+        }
+        if (lInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Load events of one service and patch its row in already loaded events.
+     * Nothing is done if events are not loaded yet, full load will acquire
+     * the service anyway.
+     * 
+     * @param serviceIndex
+     *        Index of the service in the service list.
+     * @throws ParseException
+     */
+    public void loadServiceEvents(int serviceIndex) throws ParseException {
+        EpgGrid lShownGrid = mEpgState.get().getGrid();
+        if (lShownGrid == null || mEpgTimeFilter == null) {
+            return;
+        }
+        ChannelLineup lLineup = getChannelLineup();
+        int lChannelIndex = lLineup.getChannelIndex(serviceIndex);
+        if (lChannelIndex < 0 || lChannelIndex >= lLineup.getDvbChannelCount()
+                || lChannelIndex >= lShownGrid.getChannelCount()) {
+            Log.w(TAG, "EPG change for unknown service " + serviceIndex);
+            return;
+        }
+        EpgGridBuilder lBuilder = new EpgGridBuilder(
+                lShownGrid.getChannelCount(), lShownGrid.getDayStartMinute(),
+                mEpgStringPool);
+        lBuilder.setLineupId(lLineup.getId());
+        mDTVManager.getEpgControl().setFilter(mEPGFilterID, mEpgTimeFilter);
+        loadChannelEvents(lBuilder, new EpgSlotSplitter(
+                lShownGrid.getDayStartMinute(), TimeZone.getDefault()),
+                mEPGFilterID, lChannelIndex);
+        BitSet lRows = new BitSet(lShownGrid.getChannelCount());
+        lRows.set(lChannelIndex);
+        mEpgDayCache.putChannel(publishEpgRows(lBuilder.build(), lRows)
+                .getGrid(), lChannelIndex);
+        /** Stored day is written again once the batch of services is done. */
+        mEpgSnapshotDirtyDay = lShownGrid.getDayStartMinute();
+    }
+
+    /**
+     * Write the day patched by service loads to its snapshot, so the next
+     * start does not show rows that were already replaced. Called on loader
+     * thread after a batch of service loads.
+     */
+    private void writeDirtyEpgSnapshot() {
+        int lDayStartMinute = mEpgSnapshotDirtyDay;
+        mEpgSnapshotDirtyDay = NO_EPG_DAY;
+        EpgGrid lGrid = lDayStartMinute == NO_EPG_DAY ? null : mEpgDayCache
+                .get(lDayStartMinute);
+        if (lGrid != null) {
+            writeEpgSnapshot(lGrid);
+        }
+    }
+
+    /**
+     * Acquire events of one channel and add them to the builder. Time filter
+     * must be already set.
+     * 
+     * @param builder
+     *        Builder of the day that is loaded.
+     * @param splitter
+     *        Splitter of the day that is loaded.
+     * @param eventList
+     *        Middleware event list used for acquisition.
+     * @param channelIndex
+     *        Index of the channel.
+     */
+    private void loadChannelEvents(EpgGridBuilder builder,
+            EpgSlotSplitter splitter, int eventList, int channelIndex) {
+        EpgEvent lEvent = null;
+        int lEpgEventsSize = 0;
+        /** Create Service Filter. */
+        EpgServiceFilter lEpgServiceFilter = new EpgServiceFilter();
+        lEpgServiceFilter
+                .setServiceIndex(ipAndSomeOtherTunerType ? channelIndex + 1
+                        : channelIndex);
+        /** Set Service Filter. */
+        mDTVManager.getEpgControl().setFilter(eventList, lEpgServiceFilter);
+        /** Create Genre Filter, events are filtered by genre in memory. */
+        EpgGenreFilter genreFilter = new EpgGenreFilter();
+        EnumSet<EpgEventGenre> set = EnumSet.of(EpgEventGenre.GENRE_ALL);
+        genreFilter.setGenre(set);
+        /** Set Genre Filter. */
+        mDTVManager.getEpgControl().setFilter(eventList, genreFilter);
+        /** Reset Filter */
+        mDTVManager.getEpgControl().startAcquisition(eventList);
+        lEpgEventsSize = mDTVManager
+                .getEpgControl()
+                .getAvailableEventsNumber(
+                        eventList,
+                        getServiceDescriptor(
+                                ipAndSomeOtherTunerType ? channelIndex + 1
+                                        : channelIndex).getMasterIndex());
+        for (int eventIndex = 0; eventIndex < lEpgEventsSize; eventIndex++) {
+            lEvent = mDTVManager.getEpgControl().getRequestedEvent(
+                    eventList,
+                    ipAndSomeOtherTunerType ? channelIndex + 1
+                            : channelIndex, eventIndex);
+            int lBeginMinute = toEpochMinute(splitter, lEvent.getStartTime());
+            int lEndMinute = toEpochMinute(splitter, lEvent.getEndTime());
+            /** Events running over midnight are clipped to the day. */
+            if (splitter.overlapsDay(lBeginMinute, lEndMinute)) {
+                int lEventRef = builder.addEvent(channelIndex, lBeginMinute,
+                        lEndMinute, lEvent);
+                splitter.split(builder, channelIndex, lBeginMinute,
+                        lEndMinute, lEventRef);
+            }
+        }
+        mDTVManager.getEpgControl().stopAcquisition(eventList);
+    }
+
+    private static int toEpochMinute(EpgSlotSplitter splitter, TimeDate time) {
+        return splitter.toEpochMinute(time.getYear(), time.getMonth(),
+                time.getDay(), time.getHour(), time.getMin());
+    }
+
+    /**
+     * Local time of middleware as epoch minute, with the same rules as
+     * events of a loaded day.
+     */
+    private static int toEpochMinute(TimeDate time) {
+        return EpgSlotSplitter.toEpochMinute(TimeZone.getDefault(),
+                time.getYear(), time.getMonth(), time.getDay(), time.getHour(),
+                time.getMin());
+    }
+
+    private static int toEpochMinute(long millis) {
+        return (int) (millis / 60000L);
+    }
+
+    /**
+     * Reload EPG events through EPG loader, requests close in time are merged
+     * into one load. Load that is running is stopped.
+     */
+    public void reLoadEvents() {
+        mEpgGeneration.incrementAndGet();
+        captureEpgFocus();
+        mEpgLoader.requestReload();
+    }
+
+    /**
+     * Check if a newer load was requested after a load started.
+     * 
+     * @param generation
+     *        Generation of the running load.
+     */
+    private boolean isEpgLoadSuperseded(int generation) {
+        if (generation == mEpgGeneration.get()) {
+            return false;
+        }
+        mSupersededEpgLoads.incrementAndGet();
+        Log.d(TAG, "EPG load " + generation + " is superseded");
+        return true;
+    }
+
+    /**
+     * Number of EPG loads stopped because a newer load was requested.
+     */
+    public int getSupersededEpgLoadCount() {
+        return mSupersededEpgLoads.get();
+    }
+
+    /**
+     * Reload EPG events of one service through EPG loader.
+     * 
+     * @param serviceIndex
+     *        Index of the service whose events are changed.
+     */
+    public void reLoadServiceEvents(int serviceIndex) {
+        mEpgDayCache.invalidateChannel(ipAndSomeOtherTunerType ? serviceIndex - 1
+                : serviceIndex);
+        mEpgLoader.requestServiceReload(serviceIndex);
     }
 
     public String getSwVersion(SWVersionType type) {
@@ -767,9 +1768,10 @@ public class DVBManager {
      */
     public void createSmartRecord(SmartCreateParams params)
             throws IllegalArgumentException, InternalException {
-        ServiceDescriptor descriptor = mDTVManager.getServiceControl()
-                .getServiceDescriptor(mCurrentListIndex,
-                        params.getServiceIndex());
+        ServiceDescriptor descriptor = getServiceDescriptor(params
+                .getServiceIndex());
+        /** Recording may need the spare frontend. */
+        mNeighbourTuner.release();
         mDTVManager.getPvrControl().createSmartRecord(
                 getActiveRecordRouteByServiceType(descriptor.getSourceType()),
                 params);
@@ -785,14 +1787,88 @@ public class DVBManager {
      */
     public void createTimerRecord(TimerCreateParams params)
             throws IllegalArgumentException, InternalException {
-        ServiceDescriptor descriptor = mDTVManager.getServiceControl()
-                .getServiceDescriptor(mCurrentListIndex,
-                        params.getServiceIndex());
+        ServiceDescriptor descriptor = getServiceDescriptor(params
+                .getServiceIndex());
+        /** Recording may need the spare frontend. */
+        mNeighbourTuner.release();
         mDTVManager.getPvrControl().createTimerRecord(
                 getActiveRecordRouteByServiceType(descriptor.getSourceType()),
                 params);
     }
 
+    /**
+     * Parameters of smart record of a loaded event.
+     * 
+     * @param grid
+     *        Grid which keeps the event.
+     * @param event
+     *        Reference of the event in the grid.
+     */
+    public SmartCreateParams getSmartCreateParams(EpgGrid grid, int event) {
+        return new SmartCreateParams(grid.getEventChannel(event)
+                + getServiceIndexOffset(), grid.getEventId(event),
+                grid.getEventName(event), grid.getEventDescription(event),
+                toTimeDate(grid.getEventBeginMinute(event),
+                        grid.getEventBeginSecond(event)),
+                toTimeDate(grid.getEventEndMinute(event),
+                        grid.getEventEndSecond(event)));
+    }
+
+    /**
+     * Parameters of smart record of an event found by search.
+     */
+    public SmartCreateParams getSmartCreateParams(EpgSearchIndex.Hit hit) {
+        return new SmartCreateParams(hit.getServiceIndex(), hit.getEventId(),
+                hit.getName(), hit.getDescription(),
+                toTimeDate(hit.getBeginMinute(), hit.getBeginSecond()),
+                toTimeDate(hit.getEndMinute(), hit.getEndSecond()));
+    }
+
+    /**
+     * Parameters of reminder of a loaded event.
+     * 
+     * @param grid
+     *        Grid which keeps the event.
+     * @param event
+     *        Reference of the event in the grid.
+     */
+    public ReminderSmartParam getReminderSmartParam(EpgGrid grid, int event) {
+        return new ReminderSmartParam(grid.getEventName(event),
+                grid.getEventDescription(event), grid.getEventChannel(event)
+                        + getServiceIndexOffset(), grid.getEventId(event),
+                toTimeDate(grid.getEventBeginMinute(event),
+                        grid.getEventBeginSecond(event)));
+    }
+
+    private static TimeDate toTimeDate(int epochMinute, int second) {
+        int[] lTime = EpgSlotSplitter.toLocalTime(TimeZone.getDefault(),
+                epochMinute);
+        return new TimeDate(second, lTime[4], lTime[3], lTime[2], lTime[1],
+                lTime[0]);
+    }
+
+    /**
+     * Set heap budget of loaded EPG days and their texts. Texts get a fixed
+     * part of it, least recently used texts are dropped from the pool when it
+     * is exceeded. When budget of days is exceeded days farthest from the
+     * shown one are dropped first.
+     * 
+     * @param memoryBudget
+     *        Budget in bytes.
+     */
+    public void setEpgMemoryBudget(long memoryBudget) {
+        long lPoolBudget = memoryBudget / EPG_STRING_POOL_SHARE;
+        mEpgStringPool.setMaxBytes(lPoolBudget);
+        mEpgDayCache.setMemoryBudget(memoryBudget - lPoolBudget);
+    }
+
+    /**
+     * Pool which shares texts of loaded events, for statistics.
+     */
+    public EpgStringPool getEpgStringPool() {
+        return mEpgStringPool;
+    }
+
     /**
      * Creates reminder based on EPG event.
      * 
@@ -822,8 +1898,8 @@ public class DVBManager {
      * 
      * @return Populated events holder
      */
-    public TimeEvent[] getLoadedEpgEvents() {
-        return mTimeEventHolders;
+    public EpgGrid getLoadedEpgEvents() {
+        return mEpgState.get().getVisibleGrid();
     }
 
     /**
@@ -841,16 +1917,130 @@ public class DVBManager {
         mLoadFinishedListener = loadFinishedListener;
     }
 
+    /**
+     * Set Present/Following Change Listener.
+     */
+    public void setNowNextChangedListener(
+            OnNowNextChangedListener nowNextChangedListener) {
+        mNowNextChangedListener = nowNextChangedListener;
+    }
+
+    /**
+     * Update present and following event of a service from middleware.
+     * 
+     * @param serviceIndex
+     *        Index of the service in the service list.
+     */
+    public void updateNowNext(int serviceIndex) {
+        EpgEvent lPresent = mDTVManager.getEpgControl()
+                .getPresentFollowingEvent(mEPGFilterID, serviceIndex,
+                        EpgEventType.PRESENT_EVENT);
+        EpgEvent lFollowing = mDTVManager.getEpgControl()
+                .getPresentFollowingEvent(mEPGFilterID, serviceIndex,
+                        EpgEventType.FOLLOWING_EVENT);
+        if (lPresent == null) {
+            mEpgNowNextCache.remove(serviceIndex);
+        } else {
+            mEpgNowNextCache.put(serviceIndex, new EpgNowNextCache.NowNext(
+                    lPresent.getName(),
+                    toEpochMinute(lPresent.getStartTime()),
+                    toEpochMinute(lPresent.getEndTime()),
+                    lFollowing == null ? "" : lFollowing.getName(),
+                    lFollowing == null ? 0 : toEpochMinute(lFollowing
+                            .getStartTime())));
+        }
+        if (mNowNextChangedListener != null) {
+            mNowNextChangedListener
+                    .onNowNextChanged(ipAndSomeOtherTunerType ? serviceIndex - 1
+                            : serviceIndex);
+        }
+    }
+
+    /**
+     * Get present and following event of a channel from cache, middleware is
+     * not asked.
+     * 
+     * @param channelNumber
+     *        Channel index in channel list.
+     * @return Cached events, events running now in loaded EPG if nothing is
+     *         received yet, or null if both are missing or channel is an IP
+     *         channel.
+     */
+    public EpgNowNextCache.NowNext getNowNext(int channelNumber) {
+        ChannelLineup lLineup = getChannelLineup();
+        if (channelNumber < 0
+                || channelNumber >= lLineup.getDvbChannelCount()) {
+            return null;
+        }
+        EpgNowNextCache.NowNext lNowNext = mEpgNowNextCache.get(lLineup
+                .getServiceIndex(channelNumber));
+        return lNowNext != null ? lNowNext : findNowNext(channelNumber);
+    }
+
+    /**
+     * Find present and following event of a channel in the shown EPG grid.
+     * Running events of all channels are looked up in the time index once a
+     * minute.
+     */
+    private EpgNowNextCache.NowNext findNowNext(int channelNumber) {
+        EpgGrid lGrid = mEpgState.get().getGrid();
+        if (lGrid == null || channelNumber >= lGrid.getChannelCount()) {
+            return null;
+        }
+        long lClockMinute = System.currentTimeMillis() / 60000;
+        RunningEvents lRunning = mRunningEvents;
+        if (lRunning == null || lRunning.mGrid != lGrid
+                || lRunning.mClockMinute != lClockMinute) {
+            lRunning = new RunningEvents(lGrid, lClockMinute,
+                    lGrid.findRunningEvents(getCurrentEpochMinute()));
+            mRunningEvents = lRunning;
+        }
+        int lPresent = lRunning.mEvents[channelNumber];
+        if (lPresent < 0) {
+            return null;
+        }
+        int lFollowing = lGrid.findNextEvent(channelNumber,
+                lGrid.getEventEndMinute(lPresent));
+        return new EpgNowNextCache.NowNext(lGrid.getEventName(lPresent),
+                lGrid.getEventBeginMinute(lPresent),
+                lGrid.getEventEndMinute(lPresent), lFollowing < 0 ? ""
+                        : lGrid.getEventName(lFollowing), lFollowing < 0 ? 0
+                        : lGrid.getEventBeginMinute(lFollowing));
+    }
+
+    /**
+     * Events running on every channel of a grid, found at one clock minute.
+     */
+    private static class RunningEvents {
+        private final EpgGrid mGrid;
+        private final long mClockMinute;
+        private final int[] mEvents;
+
+        private RunningEvents(EpgGrid grid, long clockMinute, int[] events) {
+            mGrid = grid;
+            mClockMinute = clockMinute;
+            mEvents = events;
+        }
+    }
+
+    /**
+     * Current time as epoch minute, in the same time base as EPG events.
+     */
+    public int getCurrentEpochMinute() {
+        return toEpochMinute(mDTVManager.getSetupControl().getTimeDate());
+    }
+
     /** Initialize EPG Date */
     public void initializeDate() {
         TimeDate lCurrentTime = mDTVManager.getSetupControl().getTimeDate();
         mLoadFinishedListener.onLoadFinished(lCurrentTime.getDay() + "/"
                 + lCurrentTime.getMonth() + "/" + lCurrentTime.getYear() + " "
-                + lCurrentTime.getHour() + ":" + lCurrentTime.getMin());
+                + lCurrentTime.getHour() + ":" + lCurrentTime.getMin(),
+                mEpgState.get());
     }
 
-    public EpgEventGenre getActiveGenre() {
-        return mGenre;
+    public EpgFilter getEpgFilter() {
+        return mEpgState.get().getFilter();
     }
 
     public boolean isIpAndSomeOtherTunerType() {
@@ -861,6 +2051,17 @@ public class DVBManager {
         return mPlaybackRouteIDMain;
     }
 
+    /**
+     * Loaded EPG days, for memory statistics.
+     */
+    public EpgDayCache getEpgDayCache() {
+        return mEpgDayCache;
+    }
+
+    public EpgLoader getEpgLoader() {
+        return mEpgLoader;
+    }
+
     public PvrManager getPvrManager() {
         return mPvrManager;
     }
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import android.util.Log;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps loaded EPG days in memory so that switching back to a day does not
+ * acquire it again from middleware. Days are keyed by epoch minute of their
+ * midnight. When there are more days than allowed or the memory budget is
+ * exceeded the day farthest from the shown day is removed first, least
+ * recently used among equally far days. Channels whose events have changed
+ * are remembered per day so only they are acquired again.
+ */
+public class EpgDayCache {
+    private static final String TAG = "EpgDayCache";
+    /** Default Memory Budget in Bytes. */
+    public static final long DEFAULT_MEMORY_BUDGET = 8 * 1024 * 1024;
+    private final LinkedHashMap<Integer, CachedDay> mDays = new LinkedHashMap<Integer, CachedDay>(
+            16, 0.75f, true);
+    private final int mMaxDays;
+    private long mMemoryBudget = DEFAULT_MEMORY_BUDGET;
+    private long mMemoryUsed = 0;
+    /** Epoch minute of the shown day, the farthest days go first. */
+    private int mFocusDayStartMinute = Integer.MIN_VALUE;
+    /** Statistics, guarded by this. */
+    private int mEvictionCount = 0;
+
+    private static class CachedDay {
+        private final EpgGrid mGrid;
+        private final long mFootprint;
+        private final BitSet mStaleChannels = new BitSet();
+
+        private CachedDay(EpgGrid grid) {
+            mGrid = grid;
+            mFootprint = grid.getMemoryFootprint();
+        }
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxDays
+     *        Maximum number of days kept in memory.
+     */
+    public EpgDayCache(int maxDays) {
+        mMaxDays = maxDays;
+    }
+
+    /**
+     * Get cached day.
+     *
+     * @param dayStartMinute
+     *        Epoch minute of the midnight the day starts at.
+     * @return Cached grid or null if day is not in cache.
+     */
+    public synchronized EpgGrid get(int dayStartMinute) {
+        CachedDay lDay = mDays.get(dayStartMinute);
+        return lDay == null ? null : lDay.mGrid;
+    }
+
+    /**
+     * Take channels of a cached day whose events changed since the day was
+     * put in cache. Returned channels are not stale any more.
+     */
+    public synchronized BitSet takeStaleChannels(int dayStartMinute) {
+        CachedDay lDay = mDays.get(dayStartMinute);
+        if (lDay == null) {
+            return new BitSet();
+        }
+        BitSet lStaleChannels = (BitSet) lDay.mStaleChannels.clone();
+        lDay.mStaleChannels.clear();
+        return lStaleChannels;
+    }
+
+    /**
+     * Put loaded day in cache, replacing previous grid of the same day.
+     */
+    public synchronized void put(EpgGrid grid) {
+        CachedDay lOldDay = mDays.remove(grid.getDayStartMinute());
+        CachedDay lDay = new CachedDay(grid);
+        if (lOldDay != null) {
+            mMemoryUsed -= lOldDay.mFootprint;
+            lDay.mStaleChannels.or(lOldDay.mStaleChannels);
+        }
+        mDays.put(grid.getDayStartMinute(), lDay);
+        mMemoryUsed += lDay.mFootprint;
+        trim();
+    }
+
+    /**
+     * Put patched day in cache after one channel has been acquired again.
+     */
+    public synchronized void putChannel(EpgGrid grid, int channel) {
+        put(grid);
+        mDays.get(grid.getDayStartMinute()).mStaleChannels.clear(channel);
+    }
+
+    /**
+     * Mark channel as changed in all cached days.
+     */
+    public synchronized void invalidateChannel(int channel) {
+        if (channel < 0) {
+            return;
+        }
+        for (CachedDay lDay : mDays.values()) {
+            lDay.mStaleChannels.set(channel);
+        }
+    }
+
+    /**
+     * Set day that is shown, it is never removed by memory budget.
+     *
+     * @param dayStartMinute
+     *        Epoch minute of the midnight the day starts at.
+     */
+    public synchronized void setFocusDay(int dayStartMinute) {
+        mFocusDayStartMinute = dayStartMinute;
+    }
+
+    public synchronized void clear() {
+        mDays.clear();
+        mMemoryUsed = 0;
+    }
+
+    /**
+     * Set memory budget, days are removed if it is already exceeded.
+     *
+     * @param memoryBudget
+     *        Budget in bytes.
+     */
+    public synchronized void setMemoryBudget(long memoryBudget) {
+        mMemoryBudget = memoryBudget;
+        trim();
+    }
+
+    public synchronized long getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    public synchronized long getMemoryUsed() {
+        return mMemoryUsed;
+    }
+
+    public synchronized int size() {
+        return mDays.size();
+    }
+
+    /**
+     * Number of days removed because of day limit or memory budget.
+     */
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Number of events in all cached days.
+     */
+    public synchronized int getEventCount() {
+        int lEventCount = 0;
+        for (CachedDay lDay : mDays.values()) {
+            lEventCount += lDay.mGrid.getEventCount();
+        }
+        return lEventCount;
+    }
+
+    /**
+     * Number of slots in all cached days.
+     */
+    public synchronized int getSlotCount() {
+        int lSlotCount = 0;
+        for (CachedDay lDay : mDays.values()) {
+            lSlotCount += lDay.mGrid.getSlotCount();
+        }
+        return lSlotCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EpgDayCache [days=" + mDays.size() + ", events="
+                + getEventCount() + ", slots=" + getSlotCount()
+                + ", memoryUsed=" + mMemoryUsed + ", memoryBudget="
+                + mMemoryBudget + ", evictions=" + mEvictionCount + "]";
+    }
+
+    /**
+     * Remove days farthest from the shown day, the shown day and the most
+     * recently used one are always kept.
+     */
+    private void trim() {
+        while (mDays.size() > 1
+                && (mDays.size() > mMaxDays || mMemoryUsed > mMemoryBudget)) {
+            Map.Entry<Integer, CachedDay> lFarthest = null;
+            long lFarthestDistance = -1;
+            Iterator<Map.Entry<Integer, CachedDay>> lIterator = mDays
+                    .entrySet().iterator();
+            /** Most recently used day is the last one, it is skipped. */
+            for (int i = 0; i < mDays.size() - 1; i++) {
+                Map.Entry<Integer, CachedDay> lDay = lIterator.next();
+                if (lDay.getKey() == mFocusDayStartMinute) {
+                    continue;
+                }
+                long lDistance = mFocusDayStartMinute == Integer.MIN_VALUE ? 0
+                        : Math.abs((long) lDay.getKey()
+                                - mFocusDayStartMinute);
+                if (lDistance > lFarthestDistance) {
+                    lFarthest = lDay;
+                    lFarthestDistance = lDistance;
+                }
+            }
+            if (lFarthest == null) {
+                return;
+            }
+            mMemoryUsed -= lFarthest.getValue().mFootprint;
+            mDays.remove(lFarthest.getKey());
+            mEvictionCount++;
+            Log.d(TAG, "Evicted EPG day " + lFarthest.getKey());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import java.util.TimeZone;
+
+/**
+ * Formats detail text of EPG events when it is shown. One builder is reused
+ * for all events and genre and parental rating labels are looked up once per
+ * code, so formatting an event allocates only the resulting string.
+ */
+public class EpgEventFormatter {
+    /**
+     * Source of localized genre and parental rating labels.
+     */
+    public interface Labels {
+        String getGenreLabel(int genreCode);
+
+        String getRatingLabel(int rate);
+    }
+
+    private static final int GENRE_CODES = 16;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private final Labels mLabels;
+    private final StringBuilder mBuilder = new StringBuilder(256);
+    /** Labels by genre code and by parental rate, filled on first use. */
+    private final String[] mGenreLabels = new String[GENRE_CODES];
+    private final String[] mRatingLabels =
+            new String[EpgFilter.MAX_PARENTAL_RATE + 1];
+
+    public EpgEventFormatter(Labels labels) {
+        mLabels = labels;
+    }
+
+    /**
+     * Detail text of an event.
+     *
+     * @param grid
+     *        Grid which keeps the event.
+     * @param event
+     *        Reference of the event in the grid.
+     */
+    public synchronized String format(EpgGrid grid, int event) {
+        int lBegin = grid.getEventBeginMinute(event);
+        int lEnd = grid.getEventEndMinute(event);
+        int lAttributes = grid.getEventAttributes(event);
+        mBuilder.setLength(0);
+        mBuilder.append("EventName: ").append(grid.getEventName(event));
+        mBuilder.append("\n\n StartTime: ");
+        appendTime(toLocalMinute(lBegin));
+        mBuilder.append("\n\n EndTime: ");
+        appendTime(toLocalMinute(lEnd));
+        mBuilder.append("\n\n Duration: ");
+        appendTime(lEnd - lBegin);
+        mBuilder.append("\n\n Extended Description: ").append(
+                grid.getEventDescription(event));
+        mBuilder.append("\n\n Parental Rating: ").append(
+                getRatingLabel(EpgFilter.getParentalRate(lAttributes)));
+        mBuilder.append("\n\n Genre: ").append(
+                getGenreLabel(EpgFilter.getGenreCode(lAttributes)));
+        mBuilder.append('\n');
+        return mBuilder.toString();
+    }
+
+    /**
+     * Append minutes as hours and two digit minutes, for example 7:05.
+     */
+    private void appendTime(int minutes) {
+        int lMinute = minutes % 60;
+        mBuilder.append(minutes / 60).append(':');
+        if (lMinute < 10) {
+            mBuilder.append('0');
+        }
+        mBuilder.append(lMinute);
+    }
+
+    /**
+     * Minute of the local day of an epoch minute.
+     */
+    private static int toLocalMinute(int epochMinute) {
+        int lOffset = TimeZone.getDefault().getOffset(epochMinute * 60000L)
+                / 60000;
+        int lMinute = (epochMinute + lOffset) % MINUTES_PER_DAY;
+        return lMinute < 0 ? lMinute + MINUTES_PER_DAY : lMinute;
+    }
+
+    private String getGenreLabel(int genreCode) {
+        if (genreCode < 0 || genreCode >= GENRE_CODES) {
+            return mLabels.getGenreLabel(genreCode);
+        }
+        if (mGenreLabels[genreCode] == null) {
+            mGenreLabels[genreCode] = mLabels.getGenreLabel(genreCode);
+        }
+        return mGenreLabels[genreCode];
+    }
+
+    private String getRatingLabel(int rate) {
+        if (rate < 0 || rate >= mRatingLabels.length) {
+            return mLabels.getRatingLabel(rate);
+        }
+        if (mRatingLabels[rate] == null) {
+            mRatingLabels[rate] = mLabels.getRatingLabel(rate);
+        }
+        return mRatingLabels[rate];
+    }
+}
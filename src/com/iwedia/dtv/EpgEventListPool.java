@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import android.os.Process;
+
+import com.iwedia.dtv.dtvmanager.IDTVManager;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Middleware event lists and worker threads for parallel EPG acquisition.
+ * Every worker owns one event list, so filters set by one worker never affect
+ * another. Pool is used and resized only from the EPG loader thread.
+ */
+public class EpgEventListPool {
+    private static final String TAG = "EpgAcquisition";
+    private final IDTVManager mDTVManager;
+    private int[] mEventLists = new int[0];
+    private ExecutorService mExecutor = null;
+
+    public EpgEventListPool(IDTVManager dtvManager) {
+        mDTVManager = dtvManager;
+    }
+
+    /**
+     * Create event lists and workers. Nothing is done if the pool already has
+     * this size.
+     *
+     * @param size
+     *        Number of workers, at most as many event lists as middleware can
+     *        acquire at the same time. Pool is released for size below 2.
+     */
+    public synchronized void setSize(int size) {
+        if (size < 2) {
+            size = 0;
+        }
+        if (size == mEventLists.length) {
+            return;
+        }
+        release();
+        if (size == 0) {
+            return;
+        }
+        mEventLists = new int[size];
+        for (int i = 0; i < size; i++) {
+            mEventLists[i] = mDTVManager.getEpgControl().createEventList();
+        }
+        mExecutor = Executors.newFixedThreadPool(size, new ThreadFactory() {
+            private int mThreadCount = 0;
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(
+                                Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, TAG + "-" + mThreadCount++);
+            }
+        });
+    }
+
+    public synchronized int getSize() {
+        return mEventLists.length;
+    }
+
+    /**
+     * Event list owned by a worker.
+     *
+     * @param worker
+     *        Index of the worker, from 0 to size - 1.
+     */
+    public synchronized int getEventList(int worker) {
+        return mEventLists[worker];
+    }
+
+    public synchronized <T> Future<T> submit(Callable<T> task) {
+        return mExecutor.submit(task);
+    }
+
+    /**
+     * Stop workers and release event lists.
+     */
+    public synchronized void release() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+        for (int eventList : mEventLists) {
+            mDTVManager.getEpgControl().releaseEventList(eventList);
+        }
+        mEventLists = new int[0];
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import com.iwedia.dtv.epg.EpgEventGenre;
+
+import java.util.BitSet;
+
+/**
+ * Filters loaded EPG events by genre and parental rate in memory, without
+ * asking middleware to acquire events again. Genre and parental rate of every
+ * event are packed in one int: low half has one bit set for the genre and high
+ * half has one bit set for the rate. A filter is a mask of accepted bits for
+ * each half, so one event is tested with two AND operations. Instances are
+ * immutable.
+ */
+public class EpgFilter {
+    /** Genre code which matches all events. */
+    public static final int GENRE_CODE_ALL = 0;
+    /** Lowest and highest parental rate defined by DVB. */
+    public static final int MIN_PARENTAL_RATE = 4;
+    public static final int MAX_PARENTAL_RATE = 18;
+    /** Parental rate limit which accepts all events. */
+    public static final int PARENTAL_RATE_ALL = MAX_PARENTAL_RATE;
+    private static final int GENRE_BITS = 0x0000FFFF;
+    private static final int RATE_BITS = 0xFFFF0000;
+    private static final int RATE_SHIFT = 16;
+    /** Rate bit used for events without parental rate. */
+    private static final int RATE_BIT_NONE = 1 << RATE_SHIFT;
+    /** Filter which accepts all events. */
+    public static final EpgFilter ALL = new EpgFilter(GENRE_BITS,
+            PARENTAL_RATE_ALL);
+    /** Accepted genre bits, all bits set when no genre is selected. */
+    private final int mGenreMask;
+    private final int mMaxParentalRate;
+
+    private EpgFilter(int genreMask, int maxParentalRate) {
+        mGenreMask = genreMask;
+        mMaxParentalRate = maxParentalRate;
+    }
+
+    /**
+     * Get genre code used in EPG events for genre.
+     */
+    public static int getGenreCode(EpgEventGenre genre) {
+        switch (genre) {
+            case MOVIE_DRAMA:
+                return 0x1;
+            case NEWS_CURRENT_AFFAIRS:
+                return 0x2;
+            case SHOW_GAME_SHOW:
+                return 0x3;
+            case SPORTS:
+                return 0x4;
+            case CHILDREN_YOUTH_PROGRAMMES:
+                return 0x5;
+            case MUSIC_BALLET_DANCE:
+                return 0x6;
+            case ARTS_CULTURE:
+                return 0x7;
+            case SOCIAL_POLITICAL_ISSUES_ECONOMICS:
+                return 0x8;
+            case EDUCATION_SCIENCE_FACTUAL_TOPICS:
+                return 0x9;
+            case LEISURE_HOBBIES:
+                return 0xA;
+            default:
+                return GENRE_CODE_ALL;
+        }
+    }
+
+    /**
+     * Pack genre and parental rate of an event into one int.
+     *
+     * @param genreCode
+     *        Genre code from middleware.
+     * @param parentalRate
+     *        Parental rate from middleware, values outside of DVB range mean
+     *        that event is not rated.
+     */
+    public static int packAttributes(int genreCode, int parentalRate) {
+        int lGenreBit = genreCode > 0 && genreCode < RATE_SHIFT ? 1 << genreCode
+                : 1;
+        return lGenreBit | getRateBit(parentalRate);
+    }
+
+    /**
+     * Genre code of packed attributes.
+     */
+    public static int getGenreCode(int attributes) {
+        int lGenreBits = attributes & GENRE_BITS;
+        return lGenreBits <= 1 ? GENRE_CODE_ALL : Integer
+                .numberOfTrailingZeros(lGenreBits);
+    }
+
+    /**
+     * Parental rate of packed attributes, 0 if event is not rated.
+     */
+    public static int getParentalRate(int attributes) {
+        int lRateBit = Integer.numberOfTrailingZeros(attributes >>> RATE_SHIFT);
+        return lRateBit == 0 || lRateBit >= 32 ? 0 : lRateBit
+                + MIN_PARENTAL_RATE - 1;
+    }
+
+    private static int getRateBit(int parentalRate) {
+        if (parentalRate < MIN_PARENTAL_RATE
+                || parentalRate > MAX_PARENTAL_RATE) {
+            return RATE_BIT_NONE;
+        }
+        return RATE_BIT_NONE << (parentalRate - MIN_PARENTAL_RATE + 1);
+    }
+
+    /**
+     * Mask of rate bits for events suitable up to given age. Events without
+     * rate always pass.
+     */
+    private static int getRateMask(int maxParentalRate) {
+        if (maxParentalRate >= MAX_PARENTAL_RATE) {
+            return RATE_BITS;
+        }
+        int lMask = RATE_BIT_NONE;
+        for (int rate = MIN_PARENTAL_RATE; rate <= maxParentalRate; rate++) {
+            lMask |= getRateBit(rate);
+        }
+        return lMask;
+    }
+
+    /**
+     * Create filter with genre added to or removed from accepted genres.
+     *
+     * @param genre
+     *        Genre to change, {@link EpgEventGenre#GENRE_ALL} clears the
+     *        genre selection.
+     * @param selected
+     *        True to accept the genre.
+     */
+    public EpgFilter withGenre(EpgEventGenre genre, boolean selected) {
+        int lGenreCode = getGenreCode(genre);
+        if (lGenreCode == GENRE_CODE_ALL) {
+            return new EpgFilter(GENRE_BITS, mMaxParentalRate);
+        }
+        int lGenreMask = mGenreMask == GENRE_BITS ? 0 : mGenreMask;
+        if (selected) {
+            lGenreMask |= 1 << lGenreCode;
+        } else {
+            lGenreMask &= ~(1 << lGenreCode);
+        }
+        return new EpgFilter(lGenreMask == 0 ? GENRE_BITS : lGenreMask,
+                mMaxParentalRate);
+    }
+
+    /**
+     * Create filter that accepts only events rated up to given age.
+     *
+     * @param maxParentalRate
+     *        Age limit, {@link #PARENTAL_RATE_ALL} accepts all events.
+     */
+    public EpgFilter withMaxParentalRate(int maxParentalRate) {
+        return new EpgFilter(mGenreMask, Math.min(maxParentalRate,
+                PARENTAL_RATE_ALL));
+    }
+
+    /**
+     * True if no genre is selected, so all genres pass.
+     */
+    public boolean isAllGenres() {
+        return mGenreMask == GENRE_BITS;
+    }
+
+    /**
+     * True if genre is selected explicitly.
+     */
+    public boolean hasGenre(EpgEventGenre genre) {
+        int lGenreCode = getGenreCode(genre);
+        if (lGenreCode == GENRE_CODE_ALL) {
+            return isAllGenres();
+        }
+        return !isAllGenres() && (mGenreMask & (1 << lGenreCode)) != 0;
+    }
+
+    public int getMaxParentalRate() {
+        return mMaxParentalRate;
+    }
+
+    /**
+     * True if this filter accepts all events.
+     */
+    public boolean isEmpty() {
+        return isAllGenres() && mMaxParentalRate >= PARENTAL_RATE_ALL;
+    }
+
+    /**
+     * Test packed attributes of one event.
+     */
+    public boolean matches(int attributes) {
+        return (attributes & mGenreMask) != 0
+                && (attributes & getRateMask(mMaxParentalRate)) != 0;
+    }
+
+    /**
+     * Create view of the grid with events accepted by this filter.
+     *
+     * @param grid
+     *        Unfiltered grid.
+     * @return Filtered grid, or the same grid when filter accepts everything.
+     */
+    public EpgGrid apply(EpgGrid grid) {
+        if (grid == null || isEmpty()) {
+            return grid;
+        }
+        int lGenreMask = mGenreMask;
+        int lRateMask = getRateMask(mMaxParentalRate);
+        BitSet lMatches = new BitSet(grid.getEventCount());
+        for (int i = 0; i < grid.getEventCount(); i++) {
+            int lAttributes = grid.getEventAttributes(i);
+            if ((lAttributes & lGenreMask) != 0
+                    && (lAttributes & lRateMask) != 0) {
+                lMatches.set(i);
+            }
+        }
+        return grid.select(lMatches);
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.TimeZone;
+
+/**
+ * EpgGrid keeps all events for all channels for one day. Times are stored as
+ * epoch minutes in parallel primitive arrays. Every event is split into slots,
+ * one slot for every hour the event covers, and slots are ordered by channel
+ * and hour so one cell (channel, hour) is a continuous range of slot indexes.
+ * Cell offsets are kept only for channels that have slots, so a large channel
+ * list with few events costs one int per empty channel.
+ * Instances are created by {@link EpgGridBuilder} and never change afterwards.
+ */
+public class EpgGrid {
+    /** Hour columns of one day. */
+    public static final int HOURS = 24;
+    private final int mChannelCount;
+    private final int mDayStartMinute;
+    /** Lineup the rows belong to, see {@link ChannelLineup#getId()}. */
+    private final int mLineupId;
+    /** Event columns, indexed by event reference. */
+    private final int mEventCount;
+    private final int[] mEventChannels;
+    private final int[] mEventBegins;
+    private final int[] mEventEnds;
+    /** Seconds of begin and end minutes, packed as begin * 60 + end. */
+    private final short[] mEventSeconds;
+    private final int[] mEventAttributes;
+    private final String[] mEventNames;
+    private final String[] mEventDescriptions;
+    /** Event IDs from middleware, texts are kept in their own columns. */
+    private final int[] mEventIds;
+    /** Row of each channel in cell offsets, -1 for channel without slots. */
+    private final int[] mChannelRows;
+    /** Slot columns, ordered by channel and hour. */
+    private final int[] mCellOffsets;
+    private final int[] mSlotBegins;
+    private final int[] mSlotEnds;
+    private final int[] mSlotEvents;
+    /** Created on first use. */
+    private volatile EpgTimeIndex mTimeIndex = null;
+    private volatile int[] mHourStartMinutes = null;
+
+    EpgGrid(int channelCount, int dayStartMinute, int lineupId,
+            int eventCount, int[] eventChannels, int[] eventBegins,
+            int[] eventEnds, short[] eventSeconds, int[] eventAttributes,
+            String[] eventNames, String[] eventDescriptions, int[] eventIds,
+            int[] channelRows, int[] cellOffsets, int[] slotBegins,
+            int[] slotEnds, int[] slotEvents) {
+        mChannelCount = channelCount;
+        mDayStartMinute = dayStartMinute;
+        mLineupId = lineupId;
+        mEventCount = eventCount;
+        mEventChannels = eventChannels;
+        mEventBegins = eventBegins;
+        mEventEnds = eventEnds;
+        mEventSeconds = eventSeconds;
+        mEventAttributes = eventAttributes;
+        mEventNames = eventNames;
+        mEventDescriptions = eventDescriptions;
+        mEventIds = eventIds;
+        mChannelRows = channelRows;
+        mCellOffsets = cellOffsets;
+        mSlotBegins = slotBegins;
+        mSlotEnds = slotEnds;
+        mSlotEvents = slotEvents;
+    }
+
+    /**
+     * Create an empty grid.
+     *
+     * @param channelCount
+     *        Size of channel list.
+     * @param dayStartMinute
+     *        Epoch minute of the local midnight this grid starts at.
+     */
+    public static EpgGrid empty(int channelCount, int dayStartMinute) {
+        return new EpgGridBuilder(channelCount, dayStartMinute).build();
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getDayStartMinute() {
+        return mDayStartMinute;
+    }
+
+    /**
+     * Identity of the channel lineup the rows were acquired for, 0 if it is
+     * not known.
+     */
+    public int getLineupId() {
+        return mLineupId;
+    }
+
+    /**
+     * Epoch minute at which given hour column of this day starts in local
+     * time, {@link #HOURS} gives the next midnight. Columns are
+     * not always an hour long on days when clocks change.
+     */
+    public int getHourStartMinute(int hour) {
+        int[] lHourStartMinutes = mHourStartMinutes;
+        if (lHourStartMinutes == null) {
+            lHourStartMinutes = EpgSlotSplitter.getHourStartMinutes(
+                    mDayStartMinute, TimeZone.getDefault());
+            mHourStartMinutes = lHourStartMinutes;
+        }
+        return lHourStartMinutes[hour];
+    }
+
+    /**
+     * Hour column which shows a moment, moments outside of the day go to the
+     * first or the last column.
+     */
+    public int getHourAt(int minute) {
+        int lHour = 0;
+        while (lHour < HOURS - 1
+                && getHourStartMinute(lHour + 1) <= minute) {
+            lHour++;
+        }
+        return lHour;
+    }
+
+    public int getEventCount() {
+        return mEventCount;
+    }
+
+    public int getSlotCount() {
+        return mCellOffsets[mCellOffsets.length - 1];
+    }
+
+    /**
+     * First slot index of a cell.
+     *
+     * @param channel
+     *        Channel index.
+     * @param hour
+     *        Hour of the day.
+     */
+    public int getCellStart(int channel, int hour) {
+        if (channel < 0 || channel >= mChannelCount
+                || mChannelRows[channel] < 0) {
+            return 0;
+        }
+        return mCellOffsets[mChannelRows[channel] * HOURS + hour];
+    }
+
+    /**
+     * Slot index after the last slot of a cell.
+     *
+     * @param channel
+     *        Channel index.
+     * @param hour
+     *        Hour of the day.
+     */
+    public int getCellEnd(int channel, int hour) {
+        if (channel < 0 || channel >= mChannelCount
+                || mChannelRows[channel] < 0) {
+            return 0;
+        }
+        return mCellOffsets[mChannelRows[channel] * HOURS + hour
+                + 1];
+    }
+
+    public int getSlotBeginMinute(int slot) {
+        return mSlotBegins[slot];
+    }
+
+    public int getSlotEndMinute(int slot) {
+        return mSlotEnds[slot];
+    }
+
+    /**
+     * Event reference of a slot.
+     */
+    public int getSlotEvent(int slot) {
+        return mSlotEvents[slot];
+    }
+
+    public int getEventChannel(int event) {
+        return mEventChannels[event];
+    }
+
+    public int getEventBeginMinute(int event) {
+        return mEventBegins[event];
+    }
+
+    public int getEventEndMinute(int event) {
+        return mEventEnds[event];
+    }
+
+    /**
+     * Second within the begin minute of an event.
+     */
+    public int getEventBeginSecond(int event) {
+        return mEventSeconds[event] / 60;
+    }
+
+    /**
+     * Second within the end minute of an event.
+     */
+    public int getEventEndSecond(int event) {
+        return mEventSeconds[event] % 60;
+    }
+
+    /**
+     * Genre and parental rate of an event, packed by
+     * {@link EpgFilter#packAttributes}.
+     */
+    public int getEventAttributes(int event) {
+        return mEventAttributes[event];
+    }
+
+    public String getEventName(int event) {
+        return mEventNames[event];
+    }
+
+    public String getEventDescription(int event) {
+        return mEventDescriptions[event];
+    }
+
+    /**
+     * Event ID from middleware, identifies the event inside its service.
+     */
+    public int getEventId(int event) {
+        return mEventIds[event];
+    }
+
+    /**
+     * Index for finding events running at a time, on all channels.
+     */
+    public EpgTimeIndex getTimeIndex() {
+        EpgTimeIndex lTimeIndex = mTimeIndex;
+        if (lTimeIndex == null) {
+            lTimeIndex = new EpgTimeIndex(this);
+            mTimeIndex = lTimeIndex;
+        }
+        return lTimeIndex;
+    }
+
+    /**
+     * Events running at a moment on every channel, found with the time index.
+     *
+     * @param minute
+     *        Epoch minute.
+     * @return Event reference for every channel, -1 where nothing runs.
+     */
+    public int[] findRunningEvents(int minute) {
+        int[] lRunning = new int[mChannelCount];
+        Arrays.fill(lRunning, -1);
+        for (int lEvent : getTimeIndex().findEventsAt(minute)) {
+            lRunning[mEventChannels[lEvent]] = lEvent;
+        }
+        return lRunning;
+    }
+
+    /**
+     * First event of a channel which begins at or after a moment.
+     *
+     * @param channel
+     *        Channel index.
+     * @param minute
+     *        Epoch minute.
+     * @return Event reference, or -1 if there is no such event.
+     */
+    public int findNextEvent(int channel, int minute) {
+        int lNext = -1;
+        int lEnd = getCellEnd(channel, HOURS - 1);
+        for (int slot = getCellStart(channel, 0); slot < lEnd; slot++) {
+            int lEvent = mSlotEvents[slot];
+            int lBegin = mEventBegins[lEvent];
+            if (lBegin >= minute
+                    && (lNext == -1 || lBegin < mEventBegins[lNext])) {
+                lNext = lEvent;
+            }
+        }
+        return lNext;
+    }
+
+    /**
+     * Estimated number of bytes this grid keeps on heap. Texts are shared by
+     * all grids and counted once by {@link EpgStringPool}, only references
+     * to them are counted here.
+     */
+    public long getMemoryFootprint() {
+        return (long) mEventCount * (5 * 4 + 2 + 2 * 4)
+                + (long) (mChannelRows.length + mCellOffsets.length) * 4
+                + (long) mSlotBegins.length * 3 * 4;
+    }
+
+    /**
+     * Number of channels that have at least one slot.
+     */
+    public int getOccupiedChannelCount() {
+        return (mCellOffsets.length - 1) / HOURS;
+    }
+
+    /**
+     * Create a grid where events of one channel are taken from another grid
+     * of the same day and all other channels stay as they are.
+     *
+     * @param channel
+     *        Channel index to replace.
+     * @param source
+     *        Grid holding new events of the channel.
+     * @return New grid, this grid is not changed.
+     */
+    public EpgGrid replaceChannel(int channel, EpgGrid source) {
+        BitSet lChannels = new BitSet(mChannelCount);
+        lChannels.set(channel);
+        return replaceChannels(lChannels, source);
+    }
+
+    /**
+     * Create a grid where events of some channels are taken from another grid
+     * of the same day and all other channels stay as they are.
+     *
+     * @param channels
+     *        Channel indexes to replace.
+     * @param source
+     *        Grid holding new events of the channels.
+     * @return New grid, this grid is not changed.
+     */
+    public EpgGrid replaceChannels(BitSet channels, EpgGrid source) {
+        int[] lThisRefs = new int[mEventCount];
+        int[] lSourceRefs = new int[source.mEventCount];
+        int lEventCount = 0;
+        for (int i = 0; i < mEventCount; i++) {
+            lThisRefs[i] = channels.get(mEventChannels[i]) ? -1
+                    : lEventCount++;
+        }
+        for (int i = 0; i < source.mEventCount; i++) {
+            lSourceRefs[i] = channels.get(source.mEventChannels[i])
+                    ? lEventCount++ : -1;
+        }
+        return rebuild(lEventCount, lThisRefs, source, lSourceRefs, channels);
+    }
+
+    /**
+     * Create a grid with only some of the events of this grid.
+     *
+     * @param events
+     *        References of events to keep.
+     * @return New grid, this grid is not changed.
+     */
+    public EpgGrid select(BitSet events) {
+        int[] lRefs = new int[mEventCount];
+        int lEventCount = 0;
+        for (int i = 0; i < mEventCount; i++) {
+            lRefs[i] = events.get(i) ? lEventCount++ : -1;
+        }
+        return rebuild(lEventCount, lRefs, null, null, new BitSet());
+    }
+
+    /**
+     * Hash of what is drawn in one cell: times of its slots and IDs of their
+     * events.
+     *
+     * @param channel
+     *        Channel index.
+     * @param hour
+     *        Hour of the day.
+     */
+    public int getCellHash(int channel, int hour) {
+        int lHash = 1;
+        int lLastSlot = getCellEnd(channel, hour);
+        for (int slot = getCellStart(channel, hour); slot < lLastSlot; slot++) {
+            lHash = 31 * lHash + mSlotBegins[slot];
+            lHash = 31 * lHash + mSlotEnds[slot];
+            lHash = 31 * lHash + mEventIds[mSlotEvents[slot]];
+        }
+        return lHash;
+    }
+
+    /**
+     * Find rows that are drawn differently in another grid. Grids of
+     * different days or channel lists differ in all rows.
+     *
+     * @param other
+     *        Grid to compare with, can be null.
+     * @param channels
+     *        Rows to compare, null compares all rows.
+     * @return Rows where at least one cell differs.
+     */
+    public BitSet diffChannels(EpgGrid other, BitSet channels) {
+        BitSet lChanged = new BitSet(mChannelCount);
+        if (other == null || other.mChannelCount != mChannelCount
+                || other.mDayStartMinute != mDayStartMinute) {
+            lChanged.set(0, mChannelCount);
+            return lChanged;
+        }
+        for (int channel = 0; channel < mChannelCount; channel++) {
+            if (channels != null && !channels.get(channel)) {
+                continue;
+            }
+            for (int hour = 0; hour < HOURS; hour++) {
+                int lSlots = getCellEnd(channel, hour)
+                        - getCellStart(channel, hour);
+                int lOtherSlots = other.getCellEnd(channel, hour)
+                        - other.getCellStart(channel, hour);
+                if (lSlots != lOtherSlots
+                        || getCellHash(channel, hour) != other.getCellHash(
+                                channel, hour)) {
+                    lChanged.set(channel);
+                    break;
+                }
+            }
+        }
+        return lChanged;
+    }
+
+    /**
+     * Copy events and slots into a new grid. Events are moved to references
+     * given by mapping arrays, -1 removes an event together with its slots.
+     * Cells of given channels are taken from the other grid.
+     */
+    private EpgGrid rebuild(int eventCount, int[] thisRefs, EpgGrid other,
+            int[] otherRefs, BitSet otherChannels) {
+        int[] lEventChannels = new int[eventCount];
+        int[] lEventBegins = new int[eventCount];
+        int[] lEventEnds = new int[eventCount];
+        short[] lEventSeconds = new short[eventCount];
+        int[] lEventAttributes = new int[eventCount];
+        String[] lEventNames = new String[eventCount];
+        String[] lEventDescriptions = new String[eventCount];
+        int[] lEventIds = new int[eventCount];
+        copyEvents(this, thisRefs, lEventChannels, lEventBegins, lEventEnds,
+                lEventSeconds, lEventAttributes, lEventNames,
+                lEventDescriptions, lEventIds);
+        if (other != null) {
+            copyEvents(other, otherRefs, lEventChannels, lEventBegins,
+                    lEventEnds, lEventSeconds, lEventAttributes, lEventNames,
+                    lEventDescriptions, lEventIds);
+        }
+        /** Count kept slots of channels to find occupied ones. */
+        int[] lChannelRows = new int[mChannelCount];
+        int lRowCount = 0;
+        int lSlotCount = 0;
+        for (int channel = 0; channel < mChannelCount; channel++) {
+            boolean lOther = otherChannels.get(channel);
+            EpgGrid lGrid = lOther ? other : this;
+            int[] lRefs = lOther ? otherRefs : thisRefs;
+            int lSlots = 0;
+            int lLastSlot = lGrid.getCellEnd(channel, HOURS - 1);
+            for (int slot = lGrid.getCellStart(channel, 0); slot < lLastSlot; slot++) {
+                if (lRefs[lGrid.mSlotEvents[slot]] != -1) {
+                    lSlots++;
+                }
+            }
+            lChannelRows[channel] = lSlots == 0 ? -1 : lRowCount++;
+            lSlotCount += lSlots;
+        }
+        int[] lCellOffsets = new int[lRowCount * HOURS + 1];
+        int[] lSlotBegins = new int[lSlotCount];
+        int[] lSlotEnds = new int[lSlotCount];
+        int[] lSlotEvents = new int[lSlotCount];
+        int lPosition = 0;
+        for (int channel = 0; channel < mChannelCount; channel++) {
+            if (lChannelRows[channel] < 0) {
+                continue;
+            }
+            boolean lOther = otherChannels.get(channel);
+            EpgGrid lGrid = lOther ? other : this;
+            int[] lRefs = lOther ? otherRefs : thisRefs;
+            for (int hour = 0; hour < HOURS; hour++) {
+                lCellOffsets[lChannelRows[channel] * HOURS + hour] =
+                        lPosition;
+                int lLastSlot = lGrid.getCellEnd(channel, hour);
+                for (int slot = lGrid.getCellStart(channel, hour); slot < lLastSlot; slot++) {
+                    int lRef = lRefs[lGrid.mSlotEvents[slot]];
+                    if (lRef != -1) {
+                        lSlotBegins[lPosition] = lGrid.mSlotBegins[slot];
+                        lSlotEnds[lPosition] = lGrid.mSlotEnds[slot];
+                        lSlotEvents[lPosition] = lRef;
+                        lPosition++;
+                    }
+                }
+            }
+        }
+        lCellOffsets[lRowCount * HOURS] = lPosition;
+        return new EpgGrid(mChannelCount, mDayStartMinute, mLineupId,
+                eventCount, lEventChannels, lEventBegins, lEventEnds,
+                lEventSeconds, lEventAttributes, lEventNames,
+                lEventDescriptions, lEventIds, lChannelRows, lCellOffsets,
+                lSlotBegins, lSlotEnds, lSlotEvents);
+    }
+
+    private static void copyEvents(EpgGrid grid, int[] refs,
+            int[] eventChannels, int[] eventBegins, int[] eventEnds,
+            short[] eventSeconds, int[] eventAttributes, String[] eventNames,
+            String[] eventDescriptions, int[] eventIds) {
+        for (int i = 0; i < grid.mEventCount; i++) {
+            int lRef = refs[i];
+            if (lRef != -1) {
+                eventChannels[lRef] = grid.mEventChannels[i];
+                eventBegins[lRef] = grid.mEventBegins[i];
+                eventEnds[lRef] = grid.mEventEnds[i];
+                eventSeconds[lRef] = grid.mEventSeconds[i];
+                eventAttributes[lRef] = grid.mEventAttributes[i];
+                eventNames[lRef] = grid.mEventNames[i];
+                eventDescriptions[lRef] = grid.mEventDescriptions[i];
+                eventIds[lRef] = grid.mEventIds[i];
+            }
+        }
+    }
+}
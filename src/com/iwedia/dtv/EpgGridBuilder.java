@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import com.iwedia.dtv.epg.EpgEvent;
+
+import java.util.Arrays;
+
+/**
+ * Collects events and slots of one day while they are acquired and packs them
+ * into an {@link EpgGrid}.
+ */
+public class EpgGridBuilder {
+    private static final int INITIAL_CAPACITY = 256;
+    private final int mChannelCount;
+    private final int mDayStartMinute;
+    /** Shares texts of events, null keeps texts as they are. */
+    private final EpgStringPool mStringPool;
+    private int mLineupId = 0;
+    private int mEventCount = 0;
+    private int[] mEventChannels = new int[INITIAL_CAPACITY];
+    private int[] mEventBegins = new int[INITIAL_CAPACITY];
+    private int[] mEventEnds = new int[INITIAL_CAPACITY];
+    private short[] mEventSeconds = new short[INITIAL_CAPACITY];
+    private int[] mEventAttributes = new int[INITIAL_CAPACITY];
+    private String[] mEventNames = new String[INITIAL_CAPACITY];
+    private String[] mEventDescriptions = new String[INITIAL_CAPACITY];
+    private int[] mEventIds = new int[INITIAL_CAPACITY];
+    private int mSlotCount = 0;
+    private int[] mSlotCells = new int[INITIAL_CAPACITY];
+    private int[] mSlotBegins = new int[INITIAL_CAPACITY];
+    private int[] mSlotEnds = new int[INITIAL_CAPACITY];
+    private int[] mSlotEvents = new int[INITIAL_CAPACITY];
+
+    /**
+     * Create a builder.
+     *
+     * @param channelCount
+     *        Size of channel list.
+     * @param dayStartMinute
+     *        Epoch minute of the local midnight the day starts at.
+     */
+    public EpgGridBuilder(int channelCount, int dayStartMinute) {
+        this(channelCount, dayStartMinute, null);
+    }
+
+    /**
+     * Create a builder which shares equal texts of events.
+     *
+     * @param channelCount
+     *        Size of channel list.
+     * @param dayStartMinute
+     *        Epoch minute of the local midnight the day starts at.
+     * @param stringPool
+     *        Pool of names and descriptions, can be null.
+     */
+    public EpgGridBuilder(int channelCount, int dayStartMinute,
+            EpgStringPool stringPool) {
+        mChannelCount = channelCount;
+        mDayStartMinute = dayStartMinute;
+        mStringPool = stringPool;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    public int getDayStartMinute() {
+        return mDayStartMinute;
+    }
+
+    /**
+     * Set identity of the channel lineup the events are acquired for.
+     *
+     * @param lineupId
+     *        Value of {@link ChannelLineup#getId()}.
+     */
+    public void setLineupId(int lineupId) {
+        mLineupId = lineupId;
+    }
+
+    /**
+     * Add event for specific channel.
+     *
+     * @param channel
+     *        Channel index.
+     * @param beginMinute
+     *        Epoch minute when event begins.
+     * @param endMinute
+     *        Epoch minute when event ends.
+     * @param event
+     *        Event from middleware.
+     * @return Reference of the event, to be used for its slots.
+     */
+    public int addEvent(int channel, int beginMinute, int endMinute,
+            EpgEvent event) {
+        int lEvent = addEvent(channel, beginMinute, endMinute,
+                EpgFilter.packAttributes(event.getGenre(),
+                        event.getParentalRate()), event.getEventID(),
+                event.getName(), event.getDescription());
+        setEventSeconds(lEvent, event.getStartTime().getSec(), event
+                .getEndTime().getSec());
+        return lEvent;
+    }
+
+    /**
+     * Add event by its fields, used when a grid is restored from a snapshot.
+     *
+     * @param channel
+     *        Channel index.
+     * @param beginMinute
+     *        Epoch minute when event begins.
+     * @param endMinute
+     *        Epoch minute when event ends.
+     * @param attributes
+     *        Genre and parental rate packed by
+     *        {@link EpgFilter#packAttributes}.
+     * @param eventId
+     *        Event ID from middleware.
+     * @param name
+     *        Event name.
+     * @param description
+     *        Event description.
+     * @return Reference of the event, to be used for its slots.
+     */
+    public int addEvent(int channel, int beginMinute, int endMinute,
+            int attributes, int eventId, String name, String description) {
+        if (mStringPool != null) {
+            name = mStringPool.intern(name);
+            description = mStringPool.intern(description);
+        }
+        return appendEvent(channel, beginMinute, endMinute, (short) 0,
+                attributes, eventId, name, description);
+    }
+
+    /**
+     * Keep seconds of begin and end of an event, so timers set from the grid
+     * start at the broadcast time. Seconds out of range are ignored.
+     *
+     * @param event
+     *        Reference returned by {@link #addEvent}.
+     * @param beginSecond
+     *        Second within the begin minute.
+     * @param endSecond
+     *        Second within the end minute.
+     */
+    public void setEventSeconds(int event, int beginSecond, int endSecond) {
+        if (beginSecond >= 0 && beginSecond < 60 && endSecond >= 0
+                && endSecond < 60) {
+            mEventSeconds[event] = (short) (beginSecond * 60 + endSecond);
+        }
+    }
+
+    private int appendEvent(int channel, int beginMinute, int endMinute,
+            short seconds, int attributes, int eventId, String name,
+            String description) {
+        if (mEventCount == mEventIds.length) {
+            growEvents(mEventCount * 2);
+        }
+        mEventChannels[mEventCount] = channel;
+        mEventBegins[mEventCount] = beginMinute;
+        mEventEnds[mEventCount] = endMinute;
+        mEventSeconds[mEventCount] = seconds;
+        mEventAttributes[mEventCount] = attributes;
+        mEventNames[mEventCount] = name;
+        mEventDescriptions[mEventCount] = description;
+        mEventIds[mEventCount] = eventId;
+        return mEventCount++;
+    }
+
+    /**
+     * Add part of an event which is drawn in one hour column.
+     *
+     * @param channel
+     *        Channel index.
+     * @param hour
+     *        Hour of the day.
+     * @param beginMinute
+     *        Epoch minute where drawing begins.
+     * @param endMinute
+     *        Epoch minute where drawing ends.
+     * @param event
+     *        Reference returned by {@link #addEvent}.
+     */
+    public void addSlot(int channel, int hour, int beginMinute, int endMinute,
+            int event) {
+        if (channel < 0 || channel >= mChannelCount || hour < 0
+                || hour >= EpgGrid.HOURS) {
+            return;
+        }
+        if (mSlotCount == mSlotCells.length) {
+            growSlots(mSlotCount * 2);
+        }
+        mSlotCells[mSlotCount] = channel * EpgGrid.HOURS + hour;
+        mSlotBegins[mSlotCount] = beginMinute;
+        mSlotEnds[mSlotCount] = endMinute;
+        mSlotEvents[mSlotCount] = event;
+        mSlotCount++;
+    }
+
+    /**
+     * Add all events and slots collected by another builder of the same day,
+     * used to merge channels acquired by different workers. Texts are taken
+     * as they are.
+     *
+     * @param source
+     *        Builder whose data is added, it is not changed.
+     */
+    public void addAll(EpgGridBuilder source) {
+        ensureCapacity(mEventCount + source.mEventCount, mSlotCount
+                + source.mSlotCount);
+        int lFirstRef = mEventCount;
+        for (int i = 0; i < source.mEventCount; i++) {
+            appendEvent(source.mEventChannels[i], source.mEventBegins[i],
+                    source.mEventEnds[i], source.mEventSeconds[i],
+                    source.mEventAttributes[i],
+                    source.mEventIds[i], source.mEventNames[i],
+                    source.mEventDescriptions[i]);
+        }
+        for (int i = 0; i < source.mSlotCount; i++) {
+            int lCell = source.mSlotCells[i];
+            addSlot(lCell / EpgGrid.HOURS, lCell % EpgGrid.HOURS,
+                    source.mSlotBegins[i], source.mSlotEnds[i], lFirstRef
+                            + source.mSlotEvents[i]);
+        }
+    }
+
+    /**
+     * Make room for events and slots, so a day whose size is known does not
+     * copy its arrays while it is acquired.
+     *
+     * @param eventCount
+     *        Number of events the builder holds without growing.
+     * @param slotCount
+     *        Number of slots the builder holds without growing.
+     */
+    public void ensureCapacity(int eventCount, int slotCount) {
+        if (eventCount > mEventIds.length) {
+            growEvents(Math.max(eventCount, mEventIds.length * 2));
+        }
+        if (slotCount > mSlotCells.length) {
+            growSlots(Math.max(slotCount, mSlotCells.length * 2));
+        }
+    }
+
+    private void growEvents(int capacity) {
+        mEventChannels = Arrays.copyOf(mEventChannels, capacity);
+        mEventBegins = Arrays.copyOf(mEventBegins, capacity);
+        mEventEnds = Arrays.copyOf(mEventEnds, capacity);
+        mEventSeconds = Arrays.copyOf(mEventSeconds, capacity);
+        mEventAttributes = Arrays.copyOf(mEventAttributes, capacity);
+        mEventNames = Arrays.copyOf(mEventNames, capacity);
+        mEventDescriptions = Arrays.copyOf(mEventDescriptions, capacity);
+        mEventIds = Arrays.copyOf(mEventIds, capacity);
+    }
+
+    private void growSlots(int capacity) {
+        mSlotCells = Arrays.copyOf(mSlotCells, capacity);
+        mSlotBegins = Arrays.copyOf(mSlotBegins, capacity);
+        mSlotEnds = Arrays.copyOf(mSlotEnds, capacity);
+        mSlotEvents = Arrays.copyOf(mSlotEvents, capacity);
+    }
+
+    /**
+     * Forget collected events and slots, arrays are kept for the next use.
+     */
+    public void clear() {
+        Arrays.fill(mEventNames, 0, mEventCount, null);
+        Arrays.fill(mEventDescriptions, 0, mEventCount, null);
+        mEventCount = 0;
+        mSlotCount = 0;
+    }
+
+    /**
+     * Pack collected data into a grid. Slots are sorted by cell, keeping the
+     * order in which they were added inside of one cell. Arrays of the grid
+     * have exact sizes and cells are kept only for channels with slots.
+     */
+    public EpgGrid build() {
+        int[] lChannelRows = new int[mChannelCount];
+        for (int i = 0; i < mSlotCount; i++) {
+            lChannelRows[mSlotCells[i] / EpgGrid.HOURS] = 1;
+        }
+        int lRowCount = 0;
+        for (int channel = 0; channel < mChannelCount; channel++) {
+            lChannelRows[channel] = lChannelRows[channel] == 0 ? -1
+                    : lRowCount++;
+        }
+        int lCellCount = lRowCount * EpgGrid.HOURS;
+        int[] lCellOffsets = new int[lCellCount + 1];
+        for (int i = 0; i < mSlotCount; i++) {
+            lCellOffsets[getRowCell(lChannelRows, mSlotCells[i]) + 1]++;
+        }
+        for (int i = 0; i < lCellCount; i++) {
+            lCellOffsets[i + 1] += lCellOffsets[i];
+        }
+        int[] lPositions = Arrays.copyOf(lCellOffsets, lCellCount);
+        int[] lSlotBegins = new int[mSlotCount];
+        int[] lSlotEnds = new int[mSlotCount];
+        int[] lSlotEvents = new int[mSlotCount];
+        for (int i = 0; i < mSlotCount; i++) {
+            int lPosition = lPositions[getRowCell(lChannelRows,
+                    mSlotCells[i])]++;
+            lSlotBegins[lPosition] = mSlotBegins[i];
+            lSlotEnds[lPosition] = mSlotEnds[i];
+            lSlotEvents[lPosition] = mSlotEvents[i];
+        }
+        return new EpgGrid(mChannelCount, mDayStartMinute, mLineupId,
+                mEventCount,
+                Arrays.copyOf(mEventChannels, mEventCount),
+                Arrays.copyOf(mEventBegins, mEventCount),
+                Arrays.copyOf(mEventEnds, mEventCount),
+                Arrays.copyOf(mEventSeconds, mEventCount),
+                Arrays.copyOf(mEventAttributes, mEventCount),
+                Arrays.copyOf(mEventNames, mEventCount),
+                Arrays.copyOf(mEventDescriptions, mEventCount),
+                Arrays.copyOf(mEventIds, mEventCount), lChannelRows,
+                lCellOffsets, lSlotBegins, lSlotEnds, lSlotEvents);
+    }
+
+    /**
+     * Index of a cell among cells of occupied channels.
+     */
+    private static int getRowCell(int[] channelRows, int cell) {
+        return channelRows[cell / EpgGrid.HOURS] * EpgGrid.HOURS
+                + cell % EpgGrid.HOURS;
+    }
+}
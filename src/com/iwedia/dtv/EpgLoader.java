@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import java.text.ParseException;
+import java.util.BitSet;
+
+/**
+ * Runs EPG loads on one worker thread. Requests that arrive while a load is
+ * waiting are merged into it: any number of full reloads become one reload,
+ * and reloads of single services are dropped when a full reload is pending
+ * anyway. A load starts after the debounce window so a burst of middleware
+ * callbacks ends up in one load. Switch to another day starts without waiting.
+ * Prefetch of a day has the lowest priority, it runs only when no other load
+ * is waiting. Loads run only on the worker, so they never run concurrently.
+ */
+public class EpgLoader {
+    private static final String TAG = "EpgLoader";
+    private static final int MESSAGE_LOAD = 0;
+    private static final int NO_DAY = -1;
+    /** Default Debounce Window in Milliseconds. */
+    public static final int DEFAULT_DEBOUNCE_MILLIS = 200;
+    private final LoadTarget mLoadTarget;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    /** Pending requests, guarded by this. */
+    private boolean mScheduled = false;
+    private boolean mFullReloadPending = false;
+    private boolean mDaySwitchPending = false;
+    private final BitSet mPendingServices = new BitSet();
+    private int mPendingPrefetchDay = NO_DAY;
+    private int mDebounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    /** Statistics, guarded by this. */
+    private int mRequestCount = 0;
+    private int mFullLoadCount = 0;
+    private int mServiceLoadCount = 0;
+    private int mPrefetchCount = 0;
+
+    /**
+     * Loads that the worker executes.
+     */
+    public interface LoadTarget {
+        /**
+         * Load all events of currently selected day, from cache if another
+         * day was selected.
+         */
+        public void loadEvents(boolean daySwitched) throws ParseException;
+
+        /** Load events of one service into already loaded day. */
+        public void loadServiceEvents(int serviceIndex) throws ParseException;
+
+        /** Load events of a day in background, without showing them. */
+        public void loadDayIntoCache(int epgDay);
+
+        /** Batch of single service loads is finished. */
+        public void serviceEventsLoaded();
+    }
+
+    public EpgLoader(LoadTarget loadTarget) {
+        mLoadTarget = loadTarget;
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == MESSAGE_LOAD) {
+                    runPendingLoads();
+                }
+            }
+        };
+    }
+
+    /**
+     * Request reload of all events of currently selected day.
+     */
+    public synchronized void requestReload() {
+        mRequestCount++;
+        mFullReloadPending = true;
+        mPendingServices.clear();
+        schedule();
+    }
+
+    /**
+     * Request load of newly selected day. Load starts at once, without
+     * debounce window.
+     */
+    public synchronized void requestDaySwitch() {
+        mRequestCount++;
+        mDaySwitchPending = true;
+        mPendingServices.clear();
+        mHandler.removeMessages(MESSAGE_LOAD);
+        mScheduled = true;
+        mHandler.sendEmptyMessage(MESSAGE_LOAD);
+    }
+
+    /**
+     * Request reload of events of one service.
+     *
+     * @param serviceIndex
+     *        Index of the service in the service list.
+     */
+    public synchronized void requestServiceReload(int serviceIndex) {
+        mRequestCount++;
+        if (!mFullReloadPending && !mDaySwitchPending && serviceIndex >= 0) {
+            mPendingServices.set(serviceIndex);
+        }
+        schedule();
+    }
+
+    /**
+     * Request background load of a day, it replaces previous prefetch request
+     * that is not started yet.
+     *
+     * @param epgDay
+     *        Day offset from today.
+     */
+    public synchronized void requestPrefetch(int epgDay) {
+        mRequestCount++;
+        mPendingPrefetchDay = epgDay;
+        schedule();
+    }
+
+    private void schedule() {
+        if (!mScheduled) {
+            mScheduled = true;
+            mHandler.sendEmptyMessageDelayed(MESSAGE_LOAD, mDebounceMillis);
+        }
+    }
+
+    private void runPendingLoads() {
+        boolean lFullReload;
+        boolean lDaySwitch;
+        BitSet lServices;
+        synchronized (this) {
+            mScheduled = false;
+            lFullReload = mFullReloadPending;
+            lDaySwitch = mDaySwitchPending;
+            lServices = (BitSet) mPendingServices.clone();
+            mFullReloadPending = false;
+            mDaySwitchPending = false;
+            mPendingServices.clear();
+        }
+        try {
+            if (lFullReload || lDaySwitch) {
+                countLoad(true);
+                mLoadTarget.loadEvents(lDaySwitch);
+            }
+            for (int i = lServices.nextSetBit(0); i >= 0; i = lServices
+                    .nextSetBit(i + 1)) {
+                countLoad(false);
+                mLoadTarget.loadServiceEvents(i);
+            }
+            if (!lServices.isEmpty()) {
+                mLoadTarget.serviceEventsLoaded();
+            }
+        } catch (ParseException e) {
+            Log.e(TAG, "There was an error in reloading EPG events.", e);
+        }
+        int lPrefetchDay;
+        synchronized (this) {
+            /** Requests that came meanwhile go first. */
+            if (mFullReloadPending || mDaySwitchPending
+                    || !mPendingServices.isEmpty()) {
+                return;
+            }
+            lPrefetchDay = mPendingPrefetchDay;
+            mPendingPrefetchDay = NO_DAY;
+        }
+        if (lPrefetchDay != NO_DAY) {
+            countPrefetch();
+            mLoadTarget.loadDayIntoCache(lPrefetchDay);
+        }
+    }
+
+    private synchronized void countPrefetch() {
+        mPrefetchCount++;
+    }
+
+    private synchronized void countLoad(boolean fullLoad) {
+        if (fullLoad) {
+            mFullLoadCount++;
+        } else {
+            mServiceLoadCount++;
+        }
+        Log.d(TAG, "Requests: " + mRequestCount + ", full loads: "
+                + mFullLoadCount + ", service loads: " + mServiceLoadCount);
+    }
+
+    /**
+     * Set time to wait for more requests before a load starts.
+     *
+     * @param debounceMillis
+     *        Debounce window in milliseconds.
+     */
+    public synchronized void setDebounceMillis(int debounceMillis) {
+        mDebounceMillis = Math.max(0, debounceMillis);
+    }
+
+    public synchronized int getDebounceMillis() {
+        return mDebounceMillis;
+    }
+
+    /**
+     * Number of reload requests received.
+     */
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * Number of full day loads executed.
+     */
+    public synchronized int getFullLoadCount() {
+        return mFullLoadCount;
+    }
+
+    /**
+     * Number of single service loads executed.
+     */
+    public synchronized int getServiceLoadCount() {
+        return mServiceLoadCount;
+    }
+
+    /**
+     * Number of days loaded in background.
+     */
+    public synchronized int getPrefetchCount() {
+        return mPrefetchCount;
+    }
+
+    /**
+     * Stop worker thread, pending requests are dropped.
+     */
+    public void quit() {
+        mHandler.removeMessages(MESSAGE_LOAD);
+        mThread.quit();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import android.util.SparseArray;
+
+/**
+ * Keeps present and following event of every service, as reported by
+ * present/following EPG callbacks. Reading is a map lookup, so channel banner
+ * and channel list can show programme info without loading the EPG day.
+ */
+public class EpgNowNextCache {
+    private final SparseArray<NowNext> mEntries = new SparseArray<NowNext>();
+
+    /**
+     * Present and following event of one service. Minutes are epoch minutes.
+     */
+    public static class NowNext {
+        private final String mPresentName;
+        private final int mPresentBeginMinute;
+        private final int mPresentEndMinute;
+        private final String mFollowingName;
+        private final int mFollowingBeginMinute;
+
+        public NowNext(String presentName, int presentBeginMinute,
+                int presentEndMinute, String followingName,
+                int followingBeginMinute) {
+            mPresentName = presentName;
+            mPresentBeginMinute = presentBeginMinute;
+            mPresentEndMinute = presentEndMinute;
+            mFollowingName = followingName;
+            mFollowingBeginMinute = followingBeginMinute;
+        }
+
+        public String getPresentName() {
+            return mPresentName;
+        }
+
+        public int getPresentBeginMinute() {
+            return mPresentBeginMinute;
+        }
+
+        public int getPresentEndMinute() {
+            return mPresentEndMinute;
+        }
+
+        public String getFollowingName() {
+            return mFollowingName;
+        }
+
+        public int getFollowingBeginMinute() {
+            return mFollowingBeginMinute;
+        }
+
+        /**
+         * Elapsed part of present event.
+         *
+         * @param nowMinute
+         *        Current epoch minute.
+         * @return Progress from 0 to 100.
+         */
+        public int getProgress(int nowMinute) {
+            int lDuration = mPresentEndMinute - mPresentBeginMinute;
+            if (lDuration <= 0) {
+                return 0;
+            }
+            int lElapsed = nowMinute - mPresentBeginMinute;
+            return Math.max(0, Math.min(100, lElapsed * 100 / lDuration));
+        }
+    }
+
+    /**
+     * Get present and following event of a service.
+     *
+     * @param serviceIndex
+     *        Index of the service in the service list.
+     * @return Cached entry or null if nothing is received yet.
+     */
+    public synchronized NowNext get(int serviceIndex) {
+        return mEntries.get(serviceIndex);
+    }
+
+    public synchronized void put(int serviceIndex, NowNext nowNext) {
+        mEntries.put(serviceIndex, nowNext);
+    }
+
+    public synchronized void remove(int serviceIndex) {
+        mEntries.remove(serviceIndex);
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+}
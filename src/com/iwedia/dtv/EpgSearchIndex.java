@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Inverted index of words of event names and descriptions of the shown day.
+ * Words are lower case without accents, every query word matches words that
+ * start with it. Rows are indexed again as they are acquired, entries of a
+ * replaced row are only marked as removed until they outnumber live entries.
+ * A whole day that is shown, for example from cache, is indexed by the first
+ * search, so switching days does not index days that are never searched.
+ */
+public class EpgSearchIndex {
+    /** Scores of one query word, best match of the word counts. */
+    private static final int SCORE_NAME_WORD = 8;
+    private static final int SCORE_NAME_PREFIX = 4;
+    private static final int SCORE_DESCRIPTION_WORD = 2;
+    private static final int SCORE_DESCRIPTION_PREFIX = 1;
+    private static final int INITIAL_CAPACITY = 256;
+    /** Postings of every word, entry shifted left, low bit is set for name. */
+    private final TreeMap<String, Postings> mWords =
+            new TreeMap<String, Postings>();
+    private int mEntryCount = 0;
+    private int mRemovedCount = 0;
+    private final BitSet mRemovedEntries = new BitSet();
+    private int[] mEntryChannels = new int[INITIAL_CAPACITY];
+    private int[] mEntryServices = new int[INITIAL_CAPACITY];
+    private int[] mEntryBegins = new int[INITIAL_CAPACITY];
+    private int[] mEntryEnds = new int[INITIAL_CAPACITY];
+    /** Seconds of begin and end, packed as begin * 60 + end. */
+    private short[] mEntrySeconds = new short[INITIAL_CAPACITY];
+    private int[] mEntryAttributes = new int[INITIAL_CAPACITY];
+    private int[] mEntryEventIds = new int[INITIAL_CAPACITY];
+    private String[] mEntryNames = new String[INITIAL_CAPACITY];
+    private String[] mEntryDescriptions = new String[INITIAL_CAPACITY];
+    /** Day indexed by the next search, null if entries are up to date. */
+    private EpgGrid mPendingGrid = null;
+    private int mPendingServiceIndexOffset = 0;
+
+    /**
+     * Event found by search.
+     */
+    public static class Hit {
+        private final int mChannel;
+        private final int mServiceIndex;
+        private final int mBeginMinute;
+        private final int mEndMinute;
+        private final short mSeconds;
+        private final int mEventId;
+        private final String mName;
+        private final String mDescription;
+        private final int mScore;
+
+        private Hit(int channel, int serviceIndex, int beginMinute,
+                int endMinute, short seconds, int eventId, String name,
+                String description, int score) {
+            mChannel = channel;
+            mServiceIndex = serviceIndex;
+            mBeginMinute = beginMinute;
+            mEndMinute = endMinute;
+            mSeconds = seconds;
+            mEventId = eventId;
+            mName = name;
+            mDescription = description;
+            mScore = score;
+        }
+
+        /** Row of the event in EPG list. */
+        public int getChannel() {
+            return mChannel;
+        }
+
+        public int getServiceIndex() {
+            return mServiceIndex;
+        }
+
+        public int getEventId() {
+            return mEventId;
+        }
+
+        public int getBeginMinute() {
+            return mBeginMinute;
+        }
+
+        public int getEndMinute() {
+            return mEndMinute;
+        }
+
+        public int getBeginSecond() {
+            return mSeconds / 60;
+        }
+
+        public int getEndSecond() {
+            return mSeconds % 60;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getDescription() {
+            return mDescription;
+        }
+
+        public int getScore() {
+            return mScore;
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void clear() {
+        mPendingGrid = null;
+        mWords.clear();
+        mEntryCount = 0;
+        mRemovedCount = 0;
+        mRemovedEntries.clear();
+        Arrays.fill(mEntryNames, null);
+        Arrays.fill(mEntryDescriptions, null);
+    }
+
+    /**
+     * Replace all entries by events of a day. Events are indexed by the next
+     * search.
+     *
+     * @param grid
+     *        Events of the day.
+     * @param serviceIndexOffset
+     *        Difference between service index and channel index.
+     */
+    public synchronized void setGrid(EpgGrid grid, int serviceIndexOffset) {
+        clear();
+        mPendingGrid = grid;
+        mPendingServiceIndexOffset = serviceIndexOffset;
+    }
+
+    /**
+     * Index events of some rows again, previous entries of the rows are
+     * removed. If the day is not indexed yet, the whole day is indexed by the
+     * next search instead.
+     *
+     * @param day
+     *        Whole day after the rows are replaced.
+     * @param grid
+     *        Grid holding new events of the rows.
+     * @param channels
+     *        Rows to index.
+     * @param serviceIndexOffset
+     *        Difference between service index and channel index.
+     */
+    public synchronized void replaceChannels(EpgGrid day, EpgGrid grid,
+            BitSet channels, int serviceIndexOffset) {
+        if (mPendingGrid != null) {
+            mPendingGrid = day;
+            mPendingServiceIndexOffset = serviceIndexOffset;
+            return;
+        }
+        for (int entry = 0; entry < mEntryCount; entry++) {
+            if (channels.get(mEntryChannels[entry])
+                    && !mRemovedEntries.get(entry)) {
+                mRemovedEntries.set(entry);
+                mEntryNames[entry] = null;
+                mEntryDescriptions[entry] = null;
+                mRemovedCount++;
+            }
+        }
+        for (int event = 0; event < grid.getEventCount(); event++) {
+            int lChannel = grid.getEventChannel(event);
+            if (channels.get(lChannel)) {
+                addEntry(grid, event, lChannel + serviceIndexOffset);
+            }
+        }
+        if (mRemovedCount > mEntryCount - mRemovedCount) {
+            compact();
+        }
+    }
+
+    private void addEntry(EpgGrid grid, int event, int serviceIndex) {
+        if (mEntryCount == mEntryChannels.length) {
+            int lCapacity = mEntryCount * 2;
+            mEntryChannels = Arrays.copyOf(mEntryChannels, lCapacity);
+            mEntryServices = Arrays.copyOf(mEntryServices, lCapacity);
+            mEntryBegins = Arrays.copyOf(mEntryBegins, lCapacity);
+            mEntryEnds = Arrays.copyOf(mEntryEnds, lCapacity);
+            mEntrySeconds = Arrays.copyOf(mEntrySeconds, lCapacity);
+            mEntryAttributes = Arrays.copyOf(mEntryAttributes, lCapacity);
+            mEntryEventIds = Arrays.copyOf(mEntryEventIds, lCapacity);
+            mEntryNames = Arrays.copyOf(mEntryNames, lCapacity);
+            mEntryDescriptions = Arrays.copyOf(mEntryDescriptions, lCapacity);
+        }
+        int lEntry = mEntryCount++;
+        mEntryChannels[lEntry] = grid.getEventChannel(event);
+        mEntryServices[lEntry] = serviceIndex;
+        mEntryBegins[lEntry] = grid.getEventBeginMinute(event);
+        mEntryEnds[lEntry] = grid.getEventEndMinute(event);
+        mEntrySeconds[lEntry] = (short) (grid.getEventBeginSecond(event) * 60
+                + grid.getEventEndSecond(event));
+        mEntryAttributes[lEntry] = grid.getEventAttributes(event);
+        mEntryEventIds[lEntry] = grid.getEventId(event);
+        mEntryNames[lEntry] = grid.getEventName(event);
+        mEntryDescriptions[lEntry] = grid.getEventDescription(event);
+        for (String word : tokenize(grid.getEventName(event))) {
+            addPosting(word, lEntry << 1 | 1);
+        }
+        for (String word : tokenize(grid.getEventDescription(event))) {
+            addPosting(word, lEntry << 1);
+        }
+    }
+
+    private void addPosting(String word, int posting) {
+        Postings lPostings = mWords.get(word);
+        if (lPostings == null) {
+            lPostings = new Postings();
+            mWords.put(word, lPostings);
+        }
+        /** Entries are added one by one, so repeated words are adjacent. */
+        if (lPostings.mSize == 0
+                || lPostings.mItems[lPostings.mSize - 1] != posting) {
+            lPostings.add(posting);
+        }
+    }
+
+    /**
+     * Drop removed entries and renumber the rest.
+     */
+    private void compact() {
+        int[] lNewEntries = new int[mEntryCount];
+        int lCount = 0;
+        for (int entry = 0; entry < mEntryCount; entry++) {
+            if (mRemovedEntries.get(entry)) {
+                lNewEntries[entry] = -1;
+                continue;
+            }
+            lNewEntries[entry] = lCount;
+            mEntryChannels[lCount] = mEntryChannels[entry];
+            mEntryServices[lCount] = mEntryServices[entry];
+            mEntryBegins[lCount] = mEntryBegins[entry];
+            mEntryEnds[lCount] = mEntryEnds[entry];
+            mEntrySeconds[lCount] = mEntrySeconds[entry];
+            mEntryAttributes[lCount] = mEntryAttributes[entry];
+            mEntryEventIds[lCount] = mEntryEventIds[entry];
+            mEntryNames[lCount] = mEntryNames[entry];
+            mEntryDescriptions[lCount] = mEntryDescriptions[entry];
+            lCount++;
+        }
+        Arrays.fill(mEntryNames, lCount, mEntryCount, null);
+        Arrays.fill(mEntryDescriptions, lCount, mEntryCount, null);
+        mEntryCount = lCount;
+        mRemovedCount = 0;
+        mRemovedEntries.clear();
+        ArrayList<String> lEmptyWords = new ArrayList<String>();
+        for (Map.Entry<String, Postings> word : mWords.entrySet()) {
+            Postings lPostings = word.getValue();
+            int lSize = 0;
+            for (int i = 0; i < lPostings.mSize; i++) {
+                int lEntry = lNewEntries[lPostings.mItems[i] >> 1];
+                if (lEntry >= 0) {
+                    lPostings.mItems[lSize++] = lEntry << 1
+                            | (lPostings.mItems[i] & 1);
+                }
+            }
+            lPostings.mSize = lSize;
+            if (lSize == 0) {
+                lEmptyWords.add(word.getKey());
+            }
+        }
+        for (String word : lEmptyWords) {
+            mWords.remove(word);
+        }
+    }
+
+    /**
+     * Find events whose name or description contains all words of a query.
+     *
+     * @param query
+     *        Words typed by user, the last one may be unfinished.
+     * @param filter
+     *        Only events matching filter are returned.
+     * @param maxHits
+     *        Maximum number of returned events.
+     * @return Events with best score first, equal scores by begin time.
+     */
+    public synchronized ArrayList<Hit> search(String query, EpgFilter filter,
+            int maxHits) {
+        ArrayList<String> lQueryWords = tokenize(query);
+        ArrayList<Hit> lHits = new ArrayList<Hit>();
+        if (lQueryWords.isEmpty()) {
+            return lHits;
+        }
+        if (mPendingGrid != null) {
+            EpgGrid lGrid = mPendingGrid;
+            mPendingGrid = null;
+            for (int event = 0; event < lGrid.getEventCount(); event++) {
+                int lChannel = lGrid.getEventChannel(event);
+                addEntry(lGrid, event, lChannel + mPendingServiceIndexOffset);
+            }
+        }
+        int[] lScores = new int[mEntryCount];
+        int[] lMatchedWords = new int[mEntryCount];
+        int[] lWordScores = new int[mEntryCount];
+        int[] lTouched = new int[mEntryCount];
+        for (int i = 0; i < lQueryWords.size(); i++) {
+            String lQueryWord = lQueryWords.get(i);
+            int lTouchedCount = 0;
+            /** All words starting with query word. */
+            for (Map.Entry<String, Postings> word : mWords.subMap(lQueryWord,
+                    lQueryWord + Character.MAX_VALUE).entrySet()) {
+                boolean lWhole = word.getKey().length() == lQueryWord.length();
+                Postings lPostings = word.getValue();
+                for (int p = 0; p < lPostings.mSize; p++) {
+                    int lEntry = lPostings.mItems[p] >> 1;
+                    /** Entry has to match all previous query words. */
+                    if (lMatchedWords[lEntry] != i) {
+                        continue;
+                    }
+                    int lScore;
+                    if ((lPostings.mItems[p] & 1) != 0) {
+                        lScore = lWhole ? SCORE_NAME_WORD : SCORE_NAME_PREFIX;
+                    } else {
+                        lScore = lWhole ? SCORE_DESCRIPTION_WORD
+                                : SCORE_DESCRIPTION_PREFIX;
+                    }
+                    if (lWordScores[lEntry] == 0) {
+                        lTouched[lTouchedCount++] = lEntry;
+                    }
+                    lWordScores[lEntry] = Math.max(lWordScores[lEntry],
+                            lScore);
+                }
+            }
+            for (int t = 0; t < lTouchedCount; t++) {
+                int lEntry = lTouched[t];
+                lScores[lEntry] += lWordScores[lEntry];
+                lMatchedWords[lEntry]++;
+                lWordScores[lEntry] = 0;
+            }
+        }
+        for (int entry = 0; entry < mEntryCount; entry++) {
+            if (lMatchedWords[entry] == lQueryWords.size()
+                    && !mRemovedEntries.get(entry)
+                    && filter.matches(mEntryAttributes[entry])) {
+                lHits.add(new Hit(mEntryChannels[entry],
+                        mEntryServices[entry], mEntryBegins[entry],
+                        mEntryEnds[entry], mEntrySeconds[entry],
+                        mEntryEventIds[entry], mEntryNames[entry],
+                        mEntryDescriptions[entry], lScores[entry]));
+            }
+        }
+        Collections.sort(lHits, new Comparator<Hit>() {
+            @Override
+            public int compare(Hit lhs, Hit rhs) {
+                if (lhs.mScore != rhs.mScore) {
+                    return lhs.mScore > rhs.mScore ? -1 : 1;
+                }
+                return lhs.mBeginMinute < rhs.mBeginMinute ? -1
+                        : (lhs.mBeginMinute == rhs.mBeginMinute ? 0 : 1);
+            }
+        });
+        if (lHits.size() > maxHits) {
+            return new ArrayList<Hit>(lHits.subList(0, maxHits));
+        }
+        return lHits;
+    }
+
+    /**
+     * Split text into lower case words without accents.
+     *
+     * @param text
+     *        Text to split, can be null.
+     */
+    static ArrayList<String> tokenize(String text) {
+        ArrayList<String> lWords = new ArrayList<String>();
+        if (text == null || text.length() == 0) {
+            return lWords;
+        }
+        String lText = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .toLowerCase(Locale.US);
+        StringBuilder lWord = new StringBuilder();
+        for (int i = 0; i < lText.length(); i++) {
+            char lChar = lText.charAt(i);
+            if (Character.getType(lChar) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(lChar)) {
+                lWord.append(lChar);
+            } else if (lWord.length() > 0) {
+                lWords.add(lWord.toString());
+                lWord.setLength(0);
+            }
+        }
+        if (lWord.length() > 0) {
+            lWords.add(lWord.toString());
+        }
+        return lWords;
+    }
+
+    private static class Postings {
+        private int[] mItems = new int[4];
+        private int mSize = 0;
+
+        private void add(int posting) {
+            if (mSize == mItems.length) {
+                mItems = Arrays.copyOf(mItems, mSize * 2);
+            }
+            mItems[mSize++] = posting;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import java.util.TimeZone;
+
+/**
+ * Splits events of one day into hour slots. All times are epoch minutes, local
+ * times from middleware are converted with the offset of the time zone at
+ * that moment, so nothing is allocated per event. An event is clipped to the
+ * day, events running over midnight get a slot in the first or the last hour.
+ * Hour columns follow local clock time, so a day can be 23 or 25 hours long
+ * when daylight saving time starts or ends. Static methods convert single
+ * times with the same rules, all EPG times go through this class. Splitter
+ * does not change after it is created, one is shared by all channels and
+ * threads of a load.
+ */
+public class EpgSlotSplitter {
+    private static final int MINUTES_PER_HOUR = 60;
+    private static final int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
+    /** Longer than any local day, clock change is searched in this range. */
+    private static final int MAX_DAY_MINUTES = 26 * MINUTES_PER_HOUR;
+    private final TimeZone mTimeZone;
+    private final int mDayStartMinute;
+    private final int mDayEndMinute;
+    /** Epoch minutes where hour columns start, last one is next midnight. */
+    private final int[] mHourStartMinutes;
+    /** Offset at the start of the day, first guess for all events. */
+    private final int mDayOffsetMinutes;
+
+    /**
+     * Create splitter of one day.
+     *
+     * @param dayStartMinute
+     *        Epoch minute of the local midnight the day starts at.
+     * @param timeZone
+     *        Time zone of local times.
+     */
+    public EpgSlotSplitter(int dayStartMinute, TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mDayStartMinute = dayStartMinute;
+        mHourStartMinutes = getHourStartMinutes(dayStartMinute, timeZone);
+        mDayEndMinute = mHourStartMinutes[EpgGrid.HOURS];
+        mDayOffsetMinutes = getOffsetMinutes(timeZone, dayStartMinute);
+    }
+
+    /**
+     * Epoch minutes at which hour columns of a local day start. An hour that
+     * is repeated when clocks go back is one column two hours long, an hour
+     * skipped when clocks go forward is an empty column. At most one clock
+     * change per day is expected.
+     *
+     * @param dayStartMinute
+     *        Epoch minute of the local midnight the day starts at.
+     * @param timeZone
+     *        Time zone of local times.
+     * @return Start of every hour column and, as the last element, epoch
+     *         minute of the next local midnight.
+     */
+    public static int[] getHourStartMinutes(int dayStartMinute,
+            TimeZone timeZone) {
+        int lOffsetBefore = getOffsetMinutes(timeZone, dayStartMinute);
+        int lOffsetAfter = getOffsetMinutes(timeZone, dayStartMinute
+                + MAX_DAY_MINUTES);
+        /** First minute with the new offset, found by bisection. */
+        int lChangeMinute = Integer.MAX_VALUE;
+        if (lOffsetBefore != lOffsetAfter) {
+            int lLow = dayStartMinute;
+            int lHigh = dayStartMinute + MAX_DAY_MINUTES;
+            while (lHigh - lLow > 1) {
+                int lMiddle = (lLow + lHigh) >>> 1;
+                if (getOffsetMinutes(timeZone, lMiddle) == lOffsetBefore) {
+                    lLow = lMiddle;
+                } else {
+                    lHigh = lMiddle;
+                }
+            }
+            lChangeMinute = lHigh;
+        }
+        /** Local midnight in minutes since epoch of local time. */
+        int lLocalDayStart = (dayStartMinute + lOffsetBefore) / MINUTES_PER_DAY
+                * MINUTES_PER_DAY;
+        int[] lStarts = new int[EpgGrid.HOURS + 1];
+        for (int hour = 0; hour <= EpgGrid.HOURS; hour++) {
+            int lLocalMinute = lLocalDayStart + hour * MINUTES_PER_HOUR;
+            int lMinute = lLocalMinute - lOffsetBefore;
+            if (lMinute >= lChangeMinute) {
+                lMinute = Math.max(lChangeMinute, lLocalMinute - lOffsetAfter);
+            }
+            lStarts[hour] = Math.max(dayStartMinute, lMinute);
+        }
+        return lStarts;
+    }
+
+    private static int getOffsetMinutes(TimeZone timeZone, int epochMinute) {
+        return timeZone.getOffset(epochMinute * 60000L) / 60000;
+    }
+
+    /**
+     * Epoch minute of the next local midnight, day is 23 to 25 hours long.
+     */
+    public int getDayEndMinute() {
+        return mDayEndMinute;
+    }
+
+    /**
+     * Convert local time to epoch minute.
+     *
+     * @param year
+     *        Year, for example 2014.
+     * @param month
+     *        Month from 1 to 12.
+     * @param day
+     *        Day of month.
+     * @param hour
+     *        Hour of day.
+     * @param minute
+     *        Minute of hour.
+     */
+    public int toEpochMinute(int year, int month, int day, int hour,
+            int minute) {
+        int lLocalMinute = toLocalMinute(year, month, day, hour, minute);
+        return lLocalMinute
+                - getOffsetMinutes(mTimeZone, lLocalMinute - mDayOffsetMinutes);
+    }
+
+    /**
+     * Convert local time out of a loaded day to epoch minute, same as
+     * {@link #toEpochMinute(int, int, int, int, int)} without a splitter.
+     *
+     * @param timeZone
+     *        Time zone of local time.
+     * @param year
+     *        Year, for example 2014.
+     * @param month
+     *        Month from 1 to 12.
+     * @param day
+     *        Day of month.
+     * @param hour
+     *        Hour of day.
+     * @param minute
+     *        Minute of hour.
+     */
+    public static int toEpochMinute(TimeZone timeZone, int year, int month,
+            int day, int hour, int minute) {
+        int lLocalMinute = toLocalMinute(year, month, day, hour, minute);
+        int lGuess = getOffsetMinutes(timeZone, lLocalMinute);
+        return lLocalMinute
+                - getOffsetMinutes(timeZone, lLocalMinute - lGuess);
+    }
+
+    /**
+     * Convert epoch minute to local time.
+     *
+     * @param timeZone
+     *        Time zone of local time.
+     * @param epochMinute
+     *        Minutes since 1970-01-01 00:00 UTC.
+     * @return Year, month from 1 to 12, day of month, hour and minute.
+     */
+    public static int[] toLocalTime(TimeZone timeZone, int epochMinute) {
+        int lLocalMinute = epochMinute
+                + getOffsetMinutes(timeZone, epochMinute);
+        int lDays = lLocalMinute >= 0 ? lLocalMinute / MINUTES_PER_DAY
+                : (lLocalMinute + 1) / MINUTES_PER_DAY - 1;
+        int lMinuteOfDay = lLocalMinute - lDays * MINUTES_PER_DAY;
+        int[] lTime = civilFromDays(lDays);
+        return new int[] { lTime[0], lTime[1], lTime[2],
+                lMinuteOfDay / MINUTES_PER_HOUR,
+                lMinuteOfDay % MINUTES_PER_HOUR };
+    }
+
+    /**
+     * Local time as minutes since 1970-01-01 00:00 of local time.
+     */
+    private static int toLocalMinute(int year, int month, int day, int hour,
+            int minute) {
+        return daysFromCivil(year, month, day) * MINUTES_PER_DAY + hour
+                * MINUTES_PER_HOUR + minute;
+    }
+
+    /**
+     * Number of days from 1970-01-01 to a date of proleptic Gregorian
+     * calendar.
+     */
+    static int daysFromCivil(int year, int month, int day) {
+        int lYear = month <= 2 ? year - 1 : year;
+        int lEra = (lYear >= 0 ? lYear : lYear - 399) / 400;
+        int lYearOfEra = lYear - lEra * 400;
+        int lDayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day
+                - 1;
+        int lDayOfEra = lYearOfEra * 365 + lYearOfEra / 4 - lYearOfEra / 100
+                + lDayOfYear;
+        return lEra * 146097 + lDayOfEra - 719468;
+    }
+
+    /**
+     * Date of proleptic Gregorian calendar a number of days after
+     * 1970-01-01, inverse of {@link #daysFromCivil(int, int, int)}.
+     *
+     * @return Year, month from 1 to 12 and day of month.
+     */
+    static int[] civilFromDays(int days) {
+        int lDays = days + 719468;
+        int lEra = (lDays >= 0 ? lDays : lDays - 146096) / 146097;
+        int lDayOfEra = lDays - lEra * 146097;
+        int lYearOfEra = (lDayOfEra - lDayOfEra / 1460 + lDayOfEra / 36524
+                - lDayOfEra / 146096) / 365;
+        int lDayOfYear = lDayOfEra
+                - (365 * lYearOfEra + lYearOfEra / 4 - lYearOfEra / 100);
+        int lMonthIndex = (5 * lDayOfYear + 2) / 153;
+        int lDay = lDayOfYear - (153 * lMonthIndex + 2) / 5 + 1;
+        int lMonth = lMonthIndex < 10 ? lMonthIndex + 3 : lMonthIndex - 9;
+        int lYear = lYearOfEra + lEra * 400 + (lMonth <= 2 ? 1 : 0);
+        return new int[] { lYear, lMonth, lDay };
+    }
+
+    /**
+     * Check if event is shown on this day.
+     */
+    public boolean overlapsDay(int beginMinute, int endMinute) {
+        return beginMinute < mDayEndMinute && endMinute > mDayStartMinute
+                && beginMinute < endMinute;
+    }
+
+    /**
+     * Add one slot for every hour of the day the event covers.
+     *
+     * @param builder
+     *        Builder of the day.
+     * @param channel
+     *        Channel index.
+     * @param beginMinute
+     *        Epoch minute when event begins.
+     * @param endMinute
+     *        Epoch minute when event ends.
+     * @param eventRef
+     *        Reference returned by {@link EpgGridBuilder#addEvent}.
+     * @return Number of slots added.
+     */
+    public int split(EpgGridBuilder builder, int channel, int beginMinute,
+            int endMinute, int eventRef) {
+        int lBegin = Math.max(beginMinute, mDayStartMinute);
+        int lEnd = Math.min(endMinute, mDayEndMinute);
+        if (lBegin >= lEnd) {
+            return 0;
+        }
+        int lHour = Math.min(EpgGrid.HOURS - 1, (lBegin - mDayStartMinute)
+                / MINUTES_PER_HOUR);
+        while (lHour > 0 && mHourStartMinutes[lHour] > lBegin) {
+            lHour--;
+        }
+        while (mHourStartMinutes[lHour + 1] <= lBegin) {
+            lHour++;
+        }
+        int lSlotCount = 0;
+        while (lHour < EpgGrid.HOURS && mHourStartMinutes[lHour] < lEnd) {
+            int lHourStart = mHourStartMinutes[lHour];
+            int lHourEnd = mHourStartMinutes[lHour + 1];
+            /** Hour skipped by clock change has no slots. */
+            if (lHourStart < lHourEnd) {
+                builder.addSlot(channel, lHour, Math.max(lBegin, lHourStart),
+                        Math.min(lEnd, lHourEnd), eventRef);
+                lSlotCount++;
+            }
+            lHour++;
+        }
+        return lSlotCount;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Stores loaded EPG days in binary files so that EPG can be shown right after
+ * start, before middleware acquires events again. One file keeps one day:
+ * header, event columns, cell offsets, slot columns and at the end names and
+ * descriptions of events. Files are memory mapped when read.
+ */
+public class EpgSnapshot {
+    private static final String TAG = "EpgSnapshot";
+    private static final String FILE_PREFIX = "epg_";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final int MAGIC = 0x45504753;
+    /** Increase when file layout changes, older files are ignored. */
+    private static final int VERSION = 4;
+    /** Channel, begin, end, seconds, attributes and ID of one event. */
+    private static final int EVENT_INTS = 6;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final File mDirectory;
+    private final EpgStringPool mStringPool;
+
+    /**
+     * Create snapshot store.
+     *
+     * @param directory
+     *        Directory where files are kept, usually application files dir.
+     * @param stringPool
+     *        Pool that shares texts of restored events, can be null.
+     */
+    public EpgSnapshot(File directory, EpgStringPool stringPool) {
+        mDirectory = directory;
+        mStringPool = stringPool;
+    }
+
+    private File getFile(int dayStartMinute) {
+        return new File(mDirectory, FILE_PREFIX + dayStartMinute + FILE_SUFFIX);
+    }
+
+    /**
+     * Write grid of a day. File is written next to the old one and renamed,
+     * so a broken write never replaces a good snapshot.
+     */
+    public void write(EpgGrid grid) {
+        File lFile = getFile(grid.getDayStartMinute());
+        File lTempFile = new File(mDirectory, lFile.getName() + ".tmp");
+        DataOutputStream lOut = null;
+        try {
+            lOut = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(lTempFile)));
+            lOut.writeInt(MAGIC);
+            lOut.writeInt(VERSION);
+            lOut.writeInt(grid.getChannelCount());
+            lOut.writeInt(grid.getLineupId());
+            lOut.writeInt(grid.getDayStartMinute());
+            lOut.writeInt(grid.getEventCount());
+            lOut.writeInt(grid.getSlotCount());
+            for (int i = 0; i < grid.getEventCount(); i++) {
+                lOut.writeInt(grid.getEventChannel(i));
+                lOut.writeInt(grid.getEventBeginMinute(i));
+                lOut.writeInt(grid.getEventEndMinute(i));
+                lOut.writeInt(grid.getEventBeginSecond(i) * 60
+                        + grid.getEventEndSecond(i));
+                lOut.writeInt(grid.getEventAttributes(i));
+                lOut.writeInt(grid.getEventId(i));
+            }
+            for (int channel = 0; channel < grid.getChannelCount(); channel++) {
+                for (int hour = 0; hour < EpgGrid.HOURS; hour++) {
+                    lOut.writeInt(grid.getCellEnd(channel, hour)
+                            - grid.getCellStart(channel, hour));
+                }
+            }
+            for (int i = 0; i < grid.getSlotCount(); i++) {
+                lOut.writeInt(grid.getSlotBeginMinute(i));
+                lOut.writeInt(grid.getSlotEndMinute(i));
+                lOut.writeInt(grid.getSlotEvent(i));
+            }
+            for (int i = 0; i < grid.getEventCount(); i++) {
+                writeString(lOut, grid.getEventName(i));
+                writeString(lOut, grid.getEventDescription(i));
+            }
+            lOut.close();
+            lOut = null;
+            if (!lTempFile.renameTo(lFile)) {
+                Log.w(TAG, "Unable to replace " + lFile);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write " + lFile, e);
+        } finally {
+            if (lOut != null) {
+                try {
+                    lOut.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to close " + lTempFile, e);
+                }
+            }
+            lTempFile.delete();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value)
+            throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] lBytes = value.getBytes(UTF_8);
+            out.writeInt(lBytes.length);
+            out.write(lBytes);
+        }
+    }
+
+    /**
+     * Read grid of a day.
+     *
+     * @param dayStartMinute
+     *        Epoch minute of the midnight the day starts at.
+     * @param channelCount
+     *        Size of current channel list.
+     * @param lineupId
+     *        Identity of current channel list, snapshot of another list is
+     *        ignored even if it has the same size.
+     * @return Restored grid or null if there is no valid snapshot. A
+     *         truncated or corrupted snapshot is deleted.
+     */
+    public EpgGrid read(int dayStartMinute, int channelCount, int lineupId) {
+        File lFile = getFile(dayStartMinute);
+        if (!lFile.isFile()) {
+            return null;
+        }
+        FileInputStream lIn = null;
+        boolean lCorrupted = true;
+        try {
+            lIn = new FileInputStream(lFile);
+            FileChannel lChannel = lIn.getChannel();
+            MappedByteBuffer lBuffer = lChannel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, lChannel.size());
+            if (lBuffer.getInt() != MAGIC || lBuffer.getInt() != VERSION
+                    || lBuffer.getInt() != channelCount
+                    || lBuffer.getInt() != lineupId
+                    || lBuffer.getInt() != dayStartMinute) {
+                Log.d(TAG, "Ignoring outdated " + lFile);
+                lCorrupted = false;
+                return null;
+            }
+            int lEventCount = lBuffer.getInt();
+            int lSlotCount = lBuffer.getInt();
+            /** Counts come from the file, check them before allocating. */
+            if (lEventCount < 0 || lSlotCount < 0
+                    || !hasInts(lBuffer, (long) lEventCount * EVENT_INTS
+                            + (long) channelCount * EpgGrid.HOURS
+                            + (long) lSlotCount * 3)) {
+                Log.e(TAG, "Snapshot is truncated " + lFile);
+                return null;
+            }
+            int[] lEvents = new int[lEventCount * EVENT_INTS];
+            lBuffer.asIntBuffer().get(lEvents);
+            lBuffer.position(lBuffer.position() + lEvents.length * 4);
+            int[] lCellSizes = new int[channelCount * EpgGrid.HOURS];
+            lBuffer.asIntBuffer().get(lCellSizes);
+            lBuffer.position(lBuffer.position() + lCellSizes.length * 4);
+            int[] lSlots = new int[lSlotCount * 3];
+            lBuffer.asIntBuffer().get(lSlots);
+            lBuffer.position(lBuffer.position() + lSlots.length * 4);
+            EpgGridBuilder lBuilder = new EpgGridBuilder(channelCount,
+                    dayStartMinute, mStringPool);
+            lBuilder.setLineupId(lineupId);
+            for (int i = 0; i < lEventCount; i++) {
+                String lName = readString(lBuffer);
+                String lDescription = readString(lBuffer);
+                int lOffset = i * EVENT_INTS;
+                int lEvent = lBuilder.addEvent(lEvents[lOffset],
+                        lEvents[lOffset + 1], lEvents[lOffset + 2],
+                        lEvents[lOffset + 4], lEvents[lOffset + 5], lName,
+                        lDescription);
+                lBuilder.setEventSeconds(lEvent, lEvents[lOffset + 3] / 60,
+                        lEvents[lOffset + 3] % 60);
+            }
+            int lSlot = 0;
+            for (int cell = 0; cell < lCellSizes.length; cell++) {
+                for (int i = 0; i < lCellSizes[cell]; i++, lSlot++) {
+                    int lEvent = lSlot < lSlotCount ? lSlots[lSlot * 3 + 2]
+                            : -1;
+                    if (lEvent < 0 || lEvent >= lEventCount) {
+                        Log.e(TAG, "Snapshot is corrupted " + lFile);
+                        return null;
+                    }
+                    lBuilder.addSlot(cell / EpgGrid.HOURS, cell
+                            % EpgGrid.HOURS, lSlots[lSlot * 3],
+                            lSlots[lSlot * 3 + 1], lEvent);
+                }
+            }
+            lCorrupted = false;
+            return lBuilder.build();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read " + lFile, e);
+            lCorrupted = false;
+        } catch (BufferUnderflowException e) {
+            Log.e(TAG, "Snapshot is truncated " + lFile, e);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Snapshot is corrupted " + lFile, e);
+        } finally {
+            if (lIn != null) {
+                try {
+                    lIn.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to close " + lFile, e);
+                }
+            }
+            /** Treat a broken snapshot as a miss, it is written again. */
+            if (lCorrupted) {
+                lFile.delete();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the buffer has given number of ints left.
+     */
+    private static boolean hasInts(MappedByteBuffer buffer, long count) {
+        return count >= 0 && count * 4 <= buffer.remaining();
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int lLength = buffer.getInt();
+        if (lLength < 0) {
+            return null;
+        }
+        if (lLength > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] lBytes = new byte[lLength];
+        buffer.get(lBytes);
+        return new String(lBytes, UTF_8);
+    }
+
+    /**
+     * Delete snapshots of days before given day.
+     *
+     * @param dayStartMinute
+     *        Epoch minute of the midnight of the first day to keep.
+     */
+    public void deleteOlderThan(int dayStartMinute) {
+        File[] lFiles = mDirectory.listFiles();
+        if (lFiles == null) {
+            return;
+        }
+        for (File lFile : lFiles) {
+            String lName = lFile.getName();
+            if (!lName.startsWith(FILE_PREFIX) || !lName.endsWith(FILE_SUFFIX)) {
+                continue;
+            }
+            try {
+                int lDay = Integer.parseInt(lName.substring(
+                        FILE_PREFIX.length(),
+                        lName.length() - FILE_SUFFIX.length()));
+                if (lDay < dayStartMinute) {
+                    lFile.delete();
+                }
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Unknown file " + lFile);
+            }
+        }
+    }
+}
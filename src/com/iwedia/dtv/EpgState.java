@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+/**
+ * Immutable view of shown EPG events. Every change is built as a new state
+ * with a higher version and published at once, so a reader that keeps one
+ * state sees loaded events, filter and filtered events that belong together.
+ */
+public class EpgState {
+    /** State before anything is loaded. */
+    public static final EpgState EMPTY = new EpgState(0, null, null,
+            EpgFilter.ALL);
+    private final long mVersion;
+    private final EpgGrid mGrid;
+    private final EpgGrid mVisibleGrid;
+    private final EpgFilter mFilter;
+
+    private EpgState(long version, EpgGrid grid, EpgGrid visibleGrid,
+            EpgFilter filter) {
+        mVersion = version;
+        mGrid = grid;
+        mVisibleGrid = visibleGrid;
+        mFilter = filter;
+    }
+
+    /**
+     * Next state that shows other events with the same filter.
+     *
+     * @param grid
+     *        Unfiltered events of the shown day.
+     */
+    public EpgState withGrid(EpgGrid grid) {
+        return new EpgState(mVersion + 1, grid, mFilter.apply(grid), mFilter);
+    }
+
+    /**
+     * Next state that shows the same events with another filter.
+     */
+    public EpgState withFilter(EpgFilter filter) {
+        return new EpgState(mVersion + 1, mGrid, mGrid == null ? null
+                : filter.apply(mGrid), filter);
+    }
+
+    /**
+     * Number of changes published before this state, readers compare it to
+     * find out whether they missed a state.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Unfiltered events, null until a day is loaded.
+     */
+    public EpgGrid getGrid() {
+        return mGrid;
+    }
+
+    /**
+     * Events matching the filter, null until a day is loaded.
+     */
+    public EpgGrid getVisibleGrid() {
+        return mVisibleGrid;
+    }
+
+    public EpgFilter getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * Check if the state shows the same day with the same channels as a
+     * grid, so rows can be replaced one by one. Channel lineup has to be the
+     * same too, a list of the same size can hold other services.
+     */
+    public boolean isSameDay(EpgGrid grid) {
+        return mGrid != null
+                && mGrid.getDayStartMinute() == grid.getDayStartMinute()
+                && mGrid.getChannelCount() == grid.getChannelCount()
+                && mGrid.getLineupId() == grid.getLineupId();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Shares equal names and descriptions of EPG events. Series titles and
+ * descriptions repeat on many channels and days, so grids keep one copy of
+ * each text instead of one per event. Pool is limited by heap bytes of its
+ * texts, when the limit is exceeded least recently used texts are dropped,
+ * texts already in grids stay shared. Texts of loaded grids are counted here
+ * once, not by every grid that uses them.
+ */
+public class EpgStringPool {
+    /** Estimated bytes of String and char array headers on heap. */
+    private static final int STRING_OVERHEAD = 40;
+    /** Estimated bytes of one entry of the map. */
+    private static final int ENTRY_OVERHEAD = 40;
+    /** Access order, so texts used by every day stay in the pool. */
+    private final LinkedHashMap<String, String> mStrings =
+            new LinkedHashMap<String, String>(16, 0.75f, true);
+    /** Size of the pool, guarded by this. */
+    private long mMaxBytes;
+    private long mBytes = 0;
+    /** Statistics, guarded by this. */
+    private long mLookupCount = 0;
+    private long mEvictionCount = 0;
+    private long mHitCount = 0;
+    private long mSavedBytes = 0;
+
+    /**
+     * Create a pool.
+     *
+     * @param maxBytes
+     *        Maximum heap bytes of kept texts and their entries.
+     */
+    public EpgStringPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Estimated heap bytes of a text.
+     */
+    public static long getTextSize(String text) {
+        return text == null ? 0 : STRING_OVERHEAD + 2L * text.length();
+    }
+
+    /**
+     * Get shared copy of a text.
+     *
+     * @param text
+     *        Text of an event, can be null.
+     * @return Equal text from the pool, or the given text if it is new.
+     */
+    public synchronized String intern(String text) {
+        if (text == null) {
+            return null;
+        }
+        mLookupCount++;
+        String lShared = mStrings.get(text);
+        if (lShared != null) {
+            if (lShared != text) {
+                mHitCount++;
+                mSavedBytes += getTextSize(text);
+            }
+            return lShared;
+        }
+        mStrings.put(text, text);
+        mBytes += ENTRY_OVERHEAD + getTextSize(text);
+        trim();
+        return text;
+    }
+
+    public synchronized int size() {
+        return mStrings.size();
+    }
+
+    /**
+     * Estimated heap bytes of kept texts and their entries.
+     */
+    public synchronized long getByteCount() {
+        return mBytes;
+    }
+
+    /**
+     * Set maximum heap bytes, texts are dropped if it is already exceeded.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public synchronized long getLookupCount() {
+        return mLookupCount;
+    }
+
+    /**
+     * Number of texts replaced by a shared copy.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of texts dropped because the pool was full.
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Estimated heap bytes of texts that were replaced by a shared copy.
+     */
+    public synchronized long getSavedBytes() {
+        return mSavedBytes;
+    }
+
+    public synchronized void clear() {
+        mStrings.clear();
+        mBytes = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EpgStringPool [size=" + mStrings.size() + ", bytes=" + mBytes
+                + ", lookups=" + mLookupCount + ", hits=" + mHitCount
+                + ", evictions=" + mEvictionCount + ", savedBytes="
+                + mSavedBytes + "]";
+    }
+
+    /**
+     * Drop least recently used texts until the pool fits its size.
+     */
+    private void trim() {
+        Iterator<String> lIterator = mStrings.keySet().iterator();
+        while (mBytes > mMaxBytes && lIterator.hasNext()) {
+            mBytes -= ENTRY_OVERHEAD + getTextSize(lIterator.next());
+            lIterator.remove();
+            mEvictionCount++;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import java.util.Arrays;
+
+/**
+ * Index of events of one grid by time. Events are sorted by begin minute and
+ * a tree over the sorted order keeps the latest end minute of every subtree,
+ * so subtrees without a running event are skipped. A query takes logarithmic
+ * time plus time proportional to the number of events found.
+ */
+public class EpgTimeIndex {
+    private final int mCount;
+    /** Event columns sorted by begin minute. */
+    private final int[] mBegins;
+    private final int[] mEnds;
+    private final int[] mEvents;
+    /** Latest end minute of every tree node, root is node 0. */
+    private final int[] mMaxEnds;
+
+    /**
+     * Build index of all events of a grid. Events which end before they begin
+     * never run and are left out.
+     */
+    public EpgTimeIndex(EpgGrid grid) {
+        long[] lKeys = new long[grid.getEventCount()];
+        int lCount = 0;
+        for (int i = 0; i < lKeys.length; i++) {
+            if (grid.getEventBeginMinute(i) < grid.getEventEndMinute(i)) {
+                lKeys[lCount++] = ((long) grid.getEventBeginMinute(i) << 32)
+                        | i;
+            }
+        }
+        mCount = lCount;
+        Arrays.sort(lKeys, 0, mCount);
+        mBegins = new int[mCount];
+        mEnds = new int[mCount];
+        mEvents = new int[mCount];
+        for (int i = 0; i < mCount; i++) {
+            int lEvent = (int) lKeys[i];
+            mBegins[i] = grid.getEventBeginMinute(lEvent);
+            mEnds[i] = grid.getEventEndMinute(lEvent);
+            mEvents[i] = lEvent;
+        }
+        mMaxEnds = new int[Math.max(1, 4 * mCount)];
+        if (mCount > 0) {
+            build(0, 0, mCount);
+        }
+    }
+
+    private int build(int node, int low, int high) {
+        if (high - low == 1) {
+            mMaxEnds[node] = mEnds[low];
+        } else {
+            int lMiddle = (low + high) >>> 1;
+            mMaxEnds[node] = Math.max(build(2 * node + 1, low, lMiddle),
+                    build(2 * node + 2, lMiddle, high));
+        }
+        return mMaxEnds[node];
+    }
+
+    /**
+     * Events which are running at a moment.
+     *
+     * @param minute
+     *        Epoch minute.
+     * @return Event references, ordered by begin minute.
+     */
+    public int[] findEventsAt(int minute) {
+        return findEventsOverlapping(minute, minute + 1);
+    }
+
+    /**
+     * Events which are running at any moment of a time range.
+     *
+     * @param beginMinute
+     *        Epoch minute where range begins.
+     * @param endMinute
+     *        Epoch minute where range ends, exclusive.
+     * @return Event references, ordered by begin minute.
+     */
+    public int[] findEventsOverlapping(int beginMinute, int endMinute) {
+        Result lResult = new Result();
+        int lCount = beginMinute < endMinute ? countBeginningBefore(endMinute)
+                : 0;
+        if (lCount > 0) {
+            collect(0, 0, mCount, lCount, beginMinute, lResult);
+        }
+        return Arrays.copyOf(lResult.mEvents, lResult.mSize);
+    }
+
+    /**
+     * Number of events running at any moment of a time range, without
+     * creating the list of them.
+     */
+    public int countEventsOverlapping(int beginMinute, int endMinute) {
+        Result lResult = new Result();
+        lResult.mCountOnly = true;
+        int lCount = beginMinute < endMinute ? countBeginningBefore(endMinute)
+                : 0;
+        if (lCount > 0) {
+            collect(0, 0, mCount, lCount, beginMinute, lResult);
+        }
+        return lResult.mSize;
+    }
+
+    /**
+     * Number of sorted events that begin before given minute.
+     */
+    private int countBeginningBefore(int minute) {
+        int lLow = 0;
+        int lHigh = mCount;
+        while (lLow < lHigh) {
+            int lMiddle = (lLow + lHigh) >>> 1;
+            if (mBegins[lMiddle] < minute) {
+                lLow = lMiddle + 1;
+            } else {
+                lHigh = lMiddle;
+            }
+        }
+        return lLow;
+    }
+
+    /**
+     * Add events of a subtree which are among first count sorted events and
+     * end after begin minute.
+     */
+    private void collect(int node, int low, int high, int count,
+            int beginMinute, Result result) {
+        if (low >= count || mMaxEnds[node] <= beginMinute) {
+            return;
+        }
+        if (high - low == 1) {
+            result.add(mEvents[low]);
+            return;
+        }
+        int lMiddle = (low + high) >>> 1;
+        collect(2 * node + 1, low, lMiddle, count, beginMinute, result);
+        collect(2 * node + 2, lMiddle, high, count, beginMinute, result);
+    }
+
+    private static class Result {
+        private int[] mEvents = new int[16];
+        private int mSize = 0;
+        private boolean mCountOnly = false;
+
+        private void add(int event) {
+            if (!mCountOnly) {
+                if (mSize == mEvents.length) {
+                    mEvents = Arrays.copyOf(mEvents, mSize * 2);
+                }
+                mEvents[mSize] = event;
+            }
+            mSize++;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.iwedia.dtv.dtvmanager.IDTVManager;
+import com.iwedia.dtv.service.SourceType;
+
+/**
+ * Keeps an idle frontend tuned to the channel that is likely to be watched
+ * next, so the next channel change does not wait for the frontend to lock.
+ * Live routes always use the demux and decoder shown on screen, pre-tuning
+ * always uses a second demux and decoder which are never shown. When the
+ * pre-tuned service is zapped to, it is started on the live route of the
+ * pre-tuned frontend and the frontends change roles. One source type with two
+ * frontends is used, IP services are zapped by URL and never pre-tuned. The
+ * spare frontend is given back whenever a recording needs it and is not used
+ * while a recording runs. Pre-tuning is off until it is enabled.
+ */
+public class NeighbourTuner {
+    private static final String TAG = "NeighbourTuner";
+    /** Pre-tune is delayed so fast zapping does not retune on every key. */
+    private static final int PRE_TUNE_DELAY_MILLIS = 1000;
+    private final IDTVManager mDTVManager;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    /** Frontends which change roles on every swap, guarded by this. */
+    private SourceType mSourceType = null;
+    private FrontendRoutes mLiveFrontend = null;
+    private FrontendRoutes mSpareFrontend = null;
+    /** Pre-tuned service, guarded by this. */
+    private int mTunedRoute = -1;
+    private int mTunedListIndex = -1;
+    private int mTunedServiceIndex = -1;
+    /** Pre-tune waiting for its delay, guarded by this. */
+    private Runnable mPendingPreTune = null;
+    private boolean mEnabled = false;
+    private int mRecordingCount = 0;
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+
+    /**
+     * Routes of one frontend: on the demux and decoder shown on screen and on
+     * the spare demux and decoder.
+     */
+    public static class FrontendRoutes {
+        private final int mLiveRoute;
+        private final int mSpareRoute;
+
+        public FrontendRoutes(int liveRoute, int spareRoute) {
+            mLiveRoute = liveRoute;
+            mSpareRoute = spareRoute;
+        }
+
+        @Override
+        public String toString() {
+            return mLiveRoute + "/" + mSpareRoute;
+        }
+    }
+
+    public NeighbourTuner(IDTVManager dtvManager) {
+        mDTVManager = dtvManager;
+    }
+
+    /**
+     * Set frontends used for pre-tuning, only the first source type is kept.
+     *
+     * @param sourceType
+     *        Source type of both frontends, IP is ignored.
+     * @param liveFrontend
+     *        Frontend of the live route of the source type.
+     * @param spareFrontend
+     *        Frontend which is not used for live view.
+     */
+    public synchronized void setFrontends(SourceType sourceType,
+            FrontendRoutes liveFrontend, FrontendRoutes spareFrontend) {
+        if (mSourceType != null || sourceType == SourceType.IP
+                || liveFrontend.mLiveRoute == -1
+                || liveFrontend.mSpareRoute == -1
+                || spareFrontend.mLiveRoute == -1
+                || spareFrontend.mSpareRoute == -1) {
+            return;
+        }
+        mSourceType = sourceType;
+        mLiveFrontend = liveFrontend;
+        mSpareFrontend = spareFrontend;
+    }
+
+    /**
+     * Check if pre-tuning is possible at all, it needs a spare frontend,
+     * demux and decoder.
+     */
+    public synchronized boolean hasSpareRoutes() {
+        return mSourceType != null;
+    }
+
+    /**
+     * Turn pre-tuning on or off, the spare frontend is given back when it is
+     * turned off.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) {
+            release();
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Take the pre-tuned frontend for a service. Frontends change roles, the
+     * caller stops the service shown on screen, starts the service on the
+     * returned route and then calls {@link #release()} to stop pre-tuning on
+     * the spare decoder.
+     *
+     * @param listIndex
+     *        Index of the service list.
+     * @param serviceIndex
+     *        Index of the service that is zapped to.
+     * @return Live route of the pre-tuned frontend, or -1 if the service is
+     *         not pre-tuned.
+     */
+    public synchronized int take(int listIndex, int serviceIndex) {
+        cancelPending();
+        if (mTunedRoute == -1) {
+            return -1;
+        }
+        if (listIndex != mTunedListIndex
+                || serviceIndex != mTunedServiceIndex) {
+            mMissCount++;
+            return -1;
+        }
+        FrontendRoutes lTaken = mSpareFrontend;
+        mSpareFrontend = mLiveFrontend;
+        mLiveFrontend = lTaken;
+        mHitCount++;
+        return lTaken.mLiveRoute;
+    }
+
+    /**
+     * Tune the spare frontend to a service after a short delay. A newer
+     * request replaces a waiting one.
+     *
+     * @param sourceType
+     *        Source type of the service.
+     * @param listIndex
+     *        Index of the service list.
+     * @param serviceIndex
+     *        Index of the service to tune.
+     */
+    public synchronized void preTune(SourceType sourceType,
+            final int listIndex, final int serviceIndex) {
+        cancelPending();
+        if (!mEnabled || mRecordingCount > 0 || sourceType != mSourceType) {
+            return;
+        }
+        mPendingPreTune = new Runnable() {
+            @Override
+            public void run() {
+                startPreTune(this, listIndex, serviceIndex);
+            }
+        };
+        mHandler.postDelayed(mPendingPreTune, PRE_TUNE_DELAY_MILLIS);
+    }
+
+    /**
+     * Stop the pre-tuned service, frontend becomes free.
+     */
+    public synchronized void release() {
+        cancelPending();
+        if (mTunedRoute != -1) {
+            Log.d(TAG, "Releasing route " + mTunedRoute);
+            mDTVManager.getServiceControl().stopService(mTunedRoute);
+            mTunedRoute = -1;
+        }
+    }
+
+    /**
+     * A recording is about to start or has started, frontend is given back
+     * and not used until all recordings stop.
+     */
+    public synchronized void recordingStarted() {
+        mRecordingCount++;
+        release();
+    }
+
+    public synchronized void recordingStopped() {
+        if (mRecordingCount > 0) {
+            mRecordingCount--;
+        }
+    }
+
+    /**
+     * Number of channel changes that used a pre-tuned frontend.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of channel changes while another service was pre-tuned.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "NeighbourTuner [enabled=" + mEnabled + ", source="
+                + mSourceType + ", live=" + mLiveFrontend + ", spare="
+                + mSpareFrontend + ", tuned=" + mTunedServiceIndex + "@"
+                + mTunedRoute + ", hits=" + mHitCount + ", misses="
+                + mMissCount + "]";
+    }
+
+    /**
+     * Channel that is likely to be watched next: the following one when
+     * zapping up, the preceding one when zapping down, otherwise the channel
+     * watched before.
+     *
+     * @param previousChannel
+     *        Channel watched before, -1 if unknown.
+     * @param channel
+     *        Channel watched now.
+     * @param channelCount
+     *        Number of channels.
+     */
+    public static int predict(int previousChannel, int channel,
+            int channelCount) {
+        if (channelCount < 2) {
+            return -1;
+        }
+        int lUp = (channel + 1) % channelCount;
+        int lDown = (channel - 1 + channelCount) % channelCount;
+        if (previousChannel == lUp) {
+            return lDown;
+        }
+        if (previousChannel == -1 || previousChannel == lDown
+                || previousChannel == channel
+                || previousChannel >= channelCount) {
+            return lUp;
+        }
+        return previousChannel;
+    }
+
+    private synchronized void startPreTune(Runnable request, int listIndex,
+            int serviceIndex) {
+        if (request != mPendingPreTune) {
+            return;
+        }
+        mPendingPreTune = null;
+        if (!mEnabled || mRecordingCount > 0 || mSourceType == null) {
+            return;
+        }
+        int lRoute = mSpareFrontend.mSpareRoute;
+        if (mTunedRoute == lRoute && mTunedListIndex == listIndex
+                && mTunedServiceIndex == serviceIndex) {
+            return;
+        }
+        if (mTunedRoute != -1 && mTunedRoute != lRoute) {
+            mDTVManager.getServiceControl().stopService(mTunedRoute);
+        }
+        Log.d(TAG, "Pre-tuning service " + serviceIndex + " on route "
+                + lRoute);
+        mTunedRoute = lRoute;
+        mTunedListIndex = listIndex;
+        mTunedServiceIndex = serviceIndex;
+        mDTVManager.getServiceControl().startService(lRoute, listIndex,
+                serviceIndex);
+    }
+
+    private void cancelPending() {
+        if (mPendingPreTune != null) {
+            mHandler.removeCallbacks(mPendingPreTune);
+            mPendingPreTune = null;
+        }
+    }
+}
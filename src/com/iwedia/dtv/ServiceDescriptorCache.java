@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import android.util.Log;
+
+import com.iwedia.dtv.dtvmanager.IDTVManager;
+import com.iwedia.dtv.service.IServiceControl;
+import com.iwedia.dtv.service.ServiceDescriptor;
+
+/**
+ * Keeps service descriptors of one service list, so channel names, zapping
+ * and EPG acquisition do not ask middleware for the same descriptor again.
+ * All descriptors of the list are read at first use. Cache is emptied when
+ * another list is used, when the list size changes or when it is invalidated.
+ */
+public class ServiceDescriptorCache {
+    private static final String TAG = "ServiceDescriptorCache";
+    private final IDTVManager mDTVManager;
+    /** Cached list, guarded by this. */
+    private int mListIndex = -1;
+    private ServiceDescriptor[] mDescriptors = null;
+    /** Statistics, guarded by this. */
+    private long mHitCount = 0;
+    private long mMissCount = 0;
+    private long mFetchCount = 0;
+
+    public ServiceDescriptorCache(IDTVManager dtvManager) {
+        mDTVManager = dtvManager;
+    }
+
+    /**
+     * Get descriptor of a service.
+     *
+     * @param listIndex
+     *        Index of the service list.
+     * @param serviceIndex
+     *        Index of the service in the list.
+     * @return Cached descriptor, or descriptor from middleware if service is
+     *         not in the list that was read.
+     */
+    public synchronized ServiceDescriptor get(int listIndex, int serviceIndex) {
+        if (mDescriptors == null || listIndex != mListIndex) {
+            fill(listIndex);
+        }
+        if (serviceIndex >= 0 && serviceIndex < mDescriptors.length) {
+            mHitCount++;
+            return mDescriptors[serviceIndex];
+        }
+        mMissCount++;
+        mFetchCount++;
+        return mDTVManager.getServiceControl().getServiceDescriptor(listIndex,
+                serviceIndex);
+    }
+
+    /**
+     * Empty cache if the list has another size than the cached one, list was
+     * changed by a scan in that case.
+     *
+     * @param listIndex
+     *        Index of the service list.
+     * @param serviceCount
+     *        Size of the list reported by middleware.
+     * @return True if cached descriptors were dropped.
+     */
+    public synchronized boolean validate(int listIndex, int serviceCount) {
+        if (mDescriptors != null && listIndex == mListIndex
+                && mDescriptors.length != serviceCount) {
+            Log.d(TAG, "Service list " + listIndex + " changed size from "
+                    + mDescriptors.length + " to " + serviceCount);
+            mDescriptors = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Empty cache, descriptors are read again at next use.
+     */
+    public synchronized void invalidate() {
+        mDescriptors = null;
+    }
+
+    /**
+     * Number of descriptors served from memory.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of lookups that had to read the list or a descriptor from
+     * middleware.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Number of descriptors read from middleware, one binder call each.
+     */
+    public synchronized long getFetchCount() {
+        return mFetchCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ServiceDescriptorCache [list=" + mListIndex + ", size="
+                + (mDescriptors == null ? 0 : mDescriptors.length)
+                + ", hits=" + mHitCount + ", misses=" + mMissCount
+                + ", fetches=" + mFetchCount + "]";
+    }
+
+    private void fill(int listIndex) {
+        IServiceControl lServiceControl = mDTVManager.getServiceControl();
+        int lCount = lServiceControl.getServiceListCount(listIndex);
+        ServiceDescriptor[] lDescriptors = new ServiceDescriptor[Math.max(0,
+                lCount)];
+        for (int i = 0; i < lDescriptors.length; i++) {
+            lDescriptors[i] = lServiceControl.getServiceDescriptor(listIndex,
+                    i);
+        }
+        mMissCount++;
+        mFetchCount += lDescriptors.length;
+        mListIndex = listIndex;
+        mDescriptors = lDescriptors;
+        Log.d(TAG, "Cached " + lDescriptors.length
+                + " service descriptors of list " + listIndex);
+    }
+}
@@ -10,77 +10,67 @@
  */
 package com.iwedia.dtv;
 
-import com.iwedia.activities.EPGActivity;
-import com.iwedia.dtv.epg.EpgEvent;
-
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.util.Date;
 
 /**
- * TimeEventHolder keeps important information about an event.
+ * TimeEventHolder keeps important information about an event. Times and
+ * detail text are computed from the grid only when they are asked for.
  */
 public class TimeEventHolder {
-    private Date mDrawingBeginTime = null;
-    private Date mDrawingEndTime = null;
-    private String mDuration = "";
-    private EpgEvent mEvent;
+    /** Formatter of the shown EPG, labels follow its language. */
+    private static volatile EpgEventFormatter sFormatter = null;
+    private EpgGrid mEpgGrid;
+    private int mSlot;
 
     /**
      * Create Holder
      * 
-     * @param eventName
-     *        Event name.
-     * @param beginTime
-     *        Time when event begins.
-     * @param endTime
-     *        Time when event ends.
+     * @param epgGrid
+     *        Grid which keeps the event.
+     * @param slot
+     *        Slot of the event in the grid, slot times are times where
+     *        drawing begins and ends.
      */
-    public TimeEventHolder(Date drawingBeginTime, Date drawingEndTime,
-            EpgEvent event) {
-        mDrawingBeginTime = drawingBeginTime;
-        mDrawingEndTime = drawingEndTime;
-        mEvent = event;
-        calculateDuration();
-    }
-
-    private void calculateDuration() {
-        long lBeginTime = mEvent.getStartTime().getCalendar().getTimeInMillis();
-        long lEndTime = mEvent.getEndTime().getCalendar().getTimeInMillis();
-        long lDuration = lEndTime - lBeginTime;
-        Date lDateDuration = new Date(lDuration);
-        mDuration = lDateDuration.getHours() + ":"
-                + String.format("%02d", lDateDuration.getMinutes());
+    public TimeEventHolder(EpgGrid epgGrid, int slot) {
+        mEpgGrid = epgGrid;
+        mSlot = slot;
     }
 
     public String getEventName() {
-        return mEvent.getName();
+        return mEpgGrid.getEventName(getEventRef());
     }
 
     public Date getBeginTime() {
-        return mDrawingBeginTime;
+        return new Date(mEpgGrid.getSlotBeginMinute(mSlot) * 60000L);
     }
 
     public Date getEndTime() {
-        return mDrawingEndTime;
+        return new Date(mEpgGrid.getSlotEndMinute(mSlot) * 60000L);
     }
 
-    public EpgEvent getEvent() {
-        return mEvent;
+    public EpgGrid getEpgGrid() {
+        return mEpgGrid;
+    }
+
+    /**
+     * Reference of the event in its grid.
+     */
+    public int getEventRef() {
+        return mEpgGrid.getSlotEvent(mSlot);
     }
 
     @Override
     public String toString() {
-        return "EventName: " + getEventName() + "\n\n StartTime: "
-                + mEvent.getStartTime().getHour() + ":"
-                + String.format("%02d", mEvent.getStartTime().getMin())
-                + "\n\n EndTime: " + mEvent.getEndTime().getHour() + ":"
-                + String.format("%02d", mEvent.getEndTime().getMin())
-                + "\n\n Duration: " + mDuration + "\n"
-                + "\n Extended Description: " + mEvent.getDescription() + "\n"
-                + "\n Parental Rating: "
-                + EPGActivity.getParentalRating(mEvent.getParentalRate())
-                + "\n" + "\n Genre: "
-                + EPGActivity.getEPGGenre(mEvent.getGenre()) + "\n";
+        EpgEventFormatter lFormatter = sFormatter;
+        return lFormatter == null ? getEventName() : lFormatter.format(
+                mEpgGrid, getEventRef());
+    }
+
+    /**
+     * Set formatter of detail texts. Called when EPG is created, as labels
+     * depend on the language.
+     */
+    public static void setFormatter(EpgEventFormatter formatter) {
+        sFormatter = formatter;
     }
 }
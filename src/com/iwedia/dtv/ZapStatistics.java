@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import android.media.MediaPlayer;
+import android.os.SystemClock;
+
+import com.iwedia.dtv.service.SourceType;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Measures channel changes stage by stage: key press, route lookup, start of
+ * the service in middleware and first video info. Stage durations are
+ * collected into histograms per source type and per path the zap was started
+ * from, as numeric entry waits for more digits before it zaps. The first
+ * video frame is not measured: the video view plays one stream for all
+ * channels and its media player reports rendering start once, middleware
+ * has no signal for the first frame of a zap. Video info is counted only
+ * when the media player reports one before the next zap, so its histogram
+ * may have fewer entries than the others.
+ */
+public class ZapStatistics {
+    /** From key press until route of the service is known. */
+    public static final int INTERVAL_ROUTE = 0;
+    /** Start service or zap URL call to middleware. */
+    public static final int INTERVAL_START = 1;
+    /** From service start until first metadata or frame from media player. */
+    public static final int INTERVAL_INFO = 2;
+    private static final String[] INTERVAL_NAMES = { "route", "start",
+            "info" };
+    /** Channel up and down keys. */
+    public static final int PATH_CHANNEL_KEY = 0;
+    /** Numeric entry, measured from the last digit. */
+    public static final int PATH_NUMERIC = 1;
+    /** Channel list dialog. */
+    public static final int PATH_CHANNEL_LIST = 2;
+    /** Zap without a recorded key, for example the first channel at start. */
+    public static final int PATH_OTHER = 3;
+    private static final String[] PATH_NAMES = { "channelKey", "numeric",
+            "channelList", "other" };
+    /** Upper bounds of histogram buckets, last bucket has no bound. */
+    private static final int[] BUCKET_BOUNDS_MILLIS = { 5, 10, 20, 30, 50,
+            75, 100, 150, 200, 300, 400, 500, 750, 1000, 1500, 2000, 3000,
+            5000, 10000 };
+    private final EnumMap<SourceType, Histogram[]> mHistograms =
+            new EnumMap<SourceType, Histogram[]>(SourceType.class);
+    /** Zap in progress, guarded by this. */
+    private long mKeyTime = -1;
+    private int mKeyPath = PATH_OTHER;
+    private int mPath = PATH_OTHER;
+    private long mZapStartTime = -1;
+    private long mServiceStartTime = -1;
+    private SourceType mSourceType = null;
+    private boolean mInfoReceived = false;
+    private boolean mZapActive = false;
+    private int mZapCount = 0;
+
+    /**
+     * Durations of one stage, counted in fixed buckets.
+     */
+    public static class Histogram {
+        private final long[] mBuckets =
+                new long[BUCKET_BOUNDS_MILLIS.length + 1];
+        private long mCount = 0;
+        private long mSum = 0;
+        private long mMin = Long.MAX_VALUE;
+        private long mMax = 0;
+
+        private void add(long millis) {
+            int lBucket = 0;
+            while (lBucket < BUCKET_BOUNDS_MILLIS.length
+                    && millis > BUCKET_BOUNDS_MILLIS[lBucket]) {
+                lBucket++;
+            }
+            mBuckets[lBucket]++;
+            mCount++;
+            mSum += millis;
+            mMin = Math.min(mMin, millis);
+            mMax = Math.max(mMax, millis);
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMin() {
+            return mCount == 0 ? 0 : mMin;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public long getMean() {
+            return mCount == 0 ? 0 : mSum / mCount;
+        }
+
+        /**
+         * Duration that given percent of measurements do not exceed, rounded
+         * up to the bound of its bucket.
+         *
+         * @param percent
+         *        Percentile from 0 to 100.
+         */
+        public long getPercentile(int percent) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long lRank = Math.max(1, (mCount * percent + 99) / 100);
+            long lSeen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+                lSeen += mBuckets[i];
+                if (lSeen >= lRank) {
+                    return Math.min(BUCKET_BOUNDS_MILLIS[i], mMax);
+                }
+            }
+            return mMax;
+        }
+    }
+
+    /**
+     * Remember time of a key press or click that changes channel. Without it
+     * a zap is measured from the moment channel change is called.
+     *
+     * @param uptimeMillis
+     *        Time of the key event, as {@link SystemClock#uptimeMillis()}.
+     * @param path
+     *        One of PATH constants.
+     */
+    public synchronized void keyPressed(long uptimeMillis, int path) {
+        mKeyTime = uptimeMillis;
+        mKeyPath = path;
+    }
+
+    /**
+     * Forget the recorded key, it did not change channel.
+     */
+    public synchronized void keyIgnored() {
+        mKeyTime = -1;
+        mKeyPath = PATH_OTHER;
+    }
+
+    /**
+     * Channel change has started.
+     */
+    public synchronized void zapStarted() {
+        mZapActive = true;
+        mZapCount++;
+        mZapStartTime = mKeyTime >= 0 ? mKeyTime : SystemClock.uptimeMillis();
+        mPath = mKeyTime >= 0 ? mKeyPath : PATH_OTHER;
+        mKeyTime = -1;
+        mKeyPath = PATH_OTHER;
+        mServiceStartTime = -1;
+        mSourceType = null;
+        mInfoReceived = false;
+    }
+
+    /**
+     * Route of the service is found.
+     *
+     * @param sourceType
+     *        Source type of the service.
+     */
+    public synchronized void routeFound(SourceType sourceType) {
+        if (!mZapActive) {
+            return;
+        }
+        mSourceType = sourceType;
+        add(INTERVAL_ROUTE, SystemClock.uptimeMillis() - mZapStartTime);
+        mServiceStartTime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Middleware call which starts the service has returned.
+     */
+    public synchronized void serviceStarted() {
+        if (!mZapActive || mSourceType == null) {
+            return;
+        }
+        add(INTERVAL_START, SystemClock.uptimeMillis() - mServiceStartTime);
+    }
+
+    /**
+     * Media player reported an info, only the first metadata or frame info of
+     * a zap is counted and it ends the zap. Buffering, lagging and
+     * interleaving infos do not mean that the new service plays.
+     *
+     * @param what
+     *        Type of the info, one of MediaPlayer.MEDIA_INFO constants.
+     */
+    public synchronized void videoInfo(int what) {
+        if (!mZapActive || mSourceType == null || mInfoReceived) {
+            return;
+        }
+        /** Constant is inlined, it is safe on API 14. */
+        if (what != MediaPlayer.MEDIA_INFO_METADATA_UPDATE
+                && what != MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START) {
+            return;
+        }
+        mInfoReceived = true;
+        add(INTERVAL_INFO, SystemClock.uptimeMillis() - mServiceStartTime);
+        mZapActive = false;
+    }
+
+    /**
+     * Histogram of one stage.
+     *
+     * @param sourceType
+     *        Source type of measured services.
+     * @param path
+     *        One of PATH constants.
+     * @param interval
+     *        One of INTERVAL constants.
+     * @return Histogram, or null if no zap to that source type was measured.
+     */
+    public synchronized Histogram getHistogram(SourceType sourceType,
+            int path, int interval) {
+        Histogram[] lHistograms = mHistograms.get(sourceType);
+        return lHistograms == null ? null : lHistograms[path
+                * INTERVAL_NAMES.length + interval];
+    }
+
+    public synchronized int getZapCount() {
+        return mZapCount;
+    }
+
+    /**
+     * Write all histograms as text, one line per source type, path and stage
+     * that has measurements.
+     *
+     * @param file
+     *        File to write, it is replaced.
+     * @throws IOException
+     */
+    public synchronized void dump(File file) throws IOException {
+        PrintWriter lWriter = new PrintWriter(new FileWriter(file));
+        try {
+            lWriter.println("zaps=" + mZapCount);
+            lWriter.println("source\tpath\tstage\tcount\tmin\tp50\tp90\tp99"
+                    + "\tmax\tmean");
+            for (Map.Entry<SourceType, Histogram[]> lEntry : mHistograms
+                    .entrySet()) {
+                for (int i = 0; i < lEntry.getValue().length; i++) {
+                    Histogram lHistogram = lEntry.getValue()[i];
+                    if (lHistogram.getCount() == 0) {
+                        continue;
+                    }
+                    lWriter.println(lEntry.getKey() + "\t"
+                            + PATH_NAMES[i / INTERVAL_NAMES.length] + "\t"
+                            + INTERVAL_NAMES[i % INTERVAL_NAMES.length]
+                            + "\t" + lHistogram.getCount() + "\t"
+                            + lHistogram.getMin() + "\t"
+                            + lHistogram.getPercentile(50) + "\t"
+                            + lHistogram.getPercentile(90) + "\t"
+                            + lHistogram.getPercentile(99) + "\t"
+                            + lHistogram.getMax() + "\t"
+                            + lHistogram.getMean());
+                }
+            }
+            if (lWriter.checkError()) {
+                throw new IOException("Error writing " + file);
+            }
+        } finally {
+            lWriter.close();
+        }
+    }
+
+    public synchronized void clear() {
+        mHistograms.clear();
+        mZapCount = 0;
+        mZapActive = false;
+    }
+
+    private void add(int interval, long millis) {
+        Histogram[] lHistograms = mHistograms.get(mSourceType);
+        if (lHistograms == null) {
+            lHistograms = new Histogram[PATH_NAMES.length
+                    * INTERVAL_NAMES.length];
+            for (int i = 0; i < lHistograms.length; i++) {
+                lHistograms[i] = new Histogram();
+            }
+            mHistograms.put(mSourceType, lHistograms);
+        }
+        lHistograms[mPath * INTERVAL_NAMES.length + interval].add(millis);
+    }
+}
@@ -17,6 +17,8 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.AdapterView.OnItemLongClickListener;
@@ -28,15 +30,17 @@ import com.iwedia.adapters.ListViewTimeAdapter;
 import com.iwedia.custom.TimeLine;
 import com.iwedia.custom.TimeLineObject;
 import com.iwedia.dtv.DVBManager;
+import com.iwedia.dtv.EpgGrid;
 import com.iwedia.epg.R;
 
 import java.text.ParseException;
+import java.util.BitSet;
 
 /**
  * This fragment inflates Listview who will show events for one hour.
  */
 public class EPGFragment extends Fragment implements OnItemSelectedListener,
-        OnItemClickListener, OnItemLongClickListener {
+        OnItemClickListener, OnItemLongClickListener, OnScrollListener {
     private final String TAG = "FragmentEPG";
     private View mView = null;
     private ListView mListView = null;
@@ -67,6 +71,7 @@ public class EPGFragment extends Fragment implements OnItemSelectedListener,
             mListView.setOnItemSelectedListener(this);
             mListView.setOnItemClickListener(this);
             mListView.setOnItemLongClickListener(this);
+            mListView.setOnScrollListener(this);
             mListView.setSelection(((EPGActivity) getActivity())
                     .getDVBManager().getCurrentChannelNumber());
             ((TimeLine) mView.findViewById(R.id.timeline_epg_time))
@@ -105,19 +110,49 @@ public class EPGFragment extends Fragment implements OnItemSelectedListener,
     }
 
     /**
-     * Create new adapter with new data.
+     * Show new data in the existing adapter, so scroll position and recycled
+     * rows are kept.
      * 
+     * @param epgGrid
+     *        Loaded events, the same for all fragments.
      * @throws RemoteException
      */
-    public void reInitializeAdapter() throws RemoteException {
+    public void reInitializeAdapter(EpgGrid epgGrid) throws RemoteException {
         /** If Fragment is not shown (initialized) do nothing */
         if (mView != null && getActivity() != null) {
-            mListView.setAdapter(new ListViewTimeAdapter(getActivity(),
-                    ((EPGActivity) getActivity()).getDVBManager()
-                            .getChannelNames(), ((EPGActivity) getActivity())
-                            .getDVBManager().getLoadedEpgEvents(),
-                    getArguments().getInt(
-                            EPGActivity.FRAGMRENT_ARGUMENT_KEY_TIME)));
+            ListViewTimeAdapter lAdapter = (ListViewTimeAdapter) mListView
+                    .getAdapter();
+            lAdapter.setChannelNames(((EPGActivity) getActivity())
+                    .getDVBManager().getChannelNames());
+            lAdapter.setEpgGrid(epgGrid);
+            lAdapter.notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Show new events of some rows, only visible rows among them are drawn
+     * again.
+     * 
+     * @param epgGrid
+     *        Loaded events.
+     * @param channels
+     *        Rows with new events.
+     */
+    public void updateRows(EpgGrid epgGrid, BitSet channels) {
+        /** If Fragment is not shown (initialized) do nothing */
+        if (mView == null || getActivity() == null) {
+            return;
+        }
+        ListViewTimeAdapter lAdapter = (ListViewTimeAdapter) mListView
+                .getAdapter();
+        lAdapter.setEpgGrid(epgGrid);
+        int lFirstPosition = mListView.getFirstVisiblePosition();
+        for (int i = 0; i < mListView.getChildCount(); i++) {
+            if (channels.get(lFirstPosition + i)) {
+                View lChild = mListView.getChildAt(i);
+                lAdapter.getView(lFirstPosition + i, lChild, mListView);
+                lChild.invalidate();
+            }
         }
     }
 
@@ -137,6 +172,20 @@ public class EPGFragment extends Fragment implements OnItemSelectedListener,
     public void onNothingSelected(AdapterView<?> arg0) {
     }
 
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem,
+            int visibleItemCount, int totalItemCount) {
+        /** Visible rows are acquired first. */
+        if (isVisible() && visibleItemCount > 0) {
+            ((EPGActivity) getActivity()).getDVBManager().setEpgViewport(
+                    firstVisibleItem, visibleItemCount);
+        }
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+    }
+
     /**
      * Set callback for fragments
      * 
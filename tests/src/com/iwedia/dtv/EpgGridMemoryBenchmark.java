@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Heap taken by a synthetic lineup of 7 days and 1000 channels, compared with
+ * the estimate of {@link EpgGrid#getMemoryFootprint()} and texts counted by
+ * {@link EpgStringPool}. Results are printed to standard output.
+ */
+public class EpgGridMemoryBenchmark extends TestCase {
+    private static final int DAYS = 7;
+    private static final int CHANNELS = 1000;
+    /** Programs of one channel repeat, so texts are shared by the pool. */
+    private static final int PROGRAMS_PER_CHANNEL = 20;
+    private static final int DAY_START = 23000000;
+
+    private static long usedHeap() {
+        Runtime lRuntime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        return lRuntime.totalMemory() - lRuntime.freeMemory();
+    }
+
+    private static EpgGrid buildDay(int day, EpgStringPool pool,
+            Random random) {
+        int lDayStart = DAY_START + day * 24 * 60;
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDayStart,
+                TimeZone.getTimeZone("UTC"));
+        EpgGridBuilder lBuilder = new EpgGridBuilder(CHANNELS, lDayStart,
+                pool);
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            int lBegin = lDayStart;
+            while (lBegin < lDayStart + 24 * 60) {
+                int lEnd = lBegin + 15 + random.nextInt(106);
+                int lProgram = random.nextInt(PROGRAMS_PER_CHANNEL);
+                /** New strings, as middleware returns a copy per event. */
+                int lEvent = lBuilder.addEvent(channel, lBegin, lEnd, 0,
+                        lBegin, new String("Program " + channel + "/"
+                                + lProgram), new String("Description of "
+                                + "program " + channel + "/" + lProgram));
+                lBuilder.setEventSeconds(lEvent, random.nextInt(60),
+                        random.nextInt(60));
+                lSplitter.split(lBuilder, channel, lBegin, lEnd, lEvent);
+                lBegin = lEnd;
+            }
+        }
+        return lBuilder.build();
+    }
+
+    public void testWeekOfThousandChannels() {
+        Random lRandom = new Random(3);
+        EpgStringPool lPool = new EpgStringPool(Long.MAX_VALUE);
+        EpgGrid[] lDays = new EpgGrid[DAYS];
+        long lHeapBefore = usedHeap();
+        for (int day = 0; day < DAYS; day++) {
+            lDays[day] = buildDay(day, lPool, lRandom);
+        }
+        long lHeapAfter = usedHeap();
+        long lFootprint = lPool.getByteCount();
+        int lEvents = 0;
+        for (EpgGrid grid : lDays) {
+            lFootprint += grid.getMemoryFootprint();
+            lEvents += grid.getEventCount();
+        }
+        System.out.println("EpgGrid: " + DAYS + " days, " + CHANNELS
+                + " channels, " + lEvents + " events, estimated "
+                + lFootprint / 1024 + " KiB, measured "
+                + (lHeapAfter - lHeapBefore) / 1024 + " KiB heap, pool "
+                + lPool);
+        assertTrue(lFootprint > 0);
+        assertEquals(DAYS, lDays.length);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.BitSet;
+
+/**
+ * Event times of {@link EpgGrid} keep seconds through all grid operations,
+ * rows published in batches give the same grid as one build.
+ */
+public class EpgGridTest extends TestCase {
+    private static final int DAY_START = 23000000;
+
+    private static EpgGrid grid(int channel, int begin, int beginSecond,
+            int end, int endSecond, String name) {
+        EpgGridBuilder lBuilder = new EpgGridBuilder(2, DAY_START);
+        int lEvent = lBuilder.addEvent(channel, DAY_START + begin, DAY_START
+                + end, 0, 1, name, null);
+        lBuilder.setEventSeconds(lEvent, beginSecond, endSecond);
+        lBuilder.addSlot(channel, begin / 60, DAY_START + begin, DAY_START
+                + end, lEvent);
+        return lBuilder.build();
+    }
+
+    private static void assertSeconds(EpgGrid grid, int event,
+            int beginSecond, int endSecond) {
+        assertEquals(beginSecond, grid.getEventBeginSecond(event));
+        assertEquals(endSecond, grid.getEventEndSecond(event));
+    }
+
+    public void testSecondsDefaultToZero() {
+        EpgGridBuilder lBuilder = new EpgGridBuilder(1, DAY_START);
+        int lEvent = lBuilder.addEvent(0, DAY_START, DAY_START + 30, 0, 1,
+                "event", null);
+        assertSeconds(lBuilder.build(), lEvent, 0, 0);
+    }
+
+    public void testSecondsOutOfRangeAreIgnored() {
+        EpgGridBuilder lBuilder = new EpgGridBuilder(1, DAY_START);
+        int lEvent = lBuilder.addEvent(0, DAY_START, DAY_START + 30, 0, 1,
+                "event", null);
+        lBuilder.setEventSeconds(lEvent, 60, 10);
+        lBuilder.setEventSeconds(lEvent, 10, -1);
+        assertSeconds(lBuilder.build(), lEvent, 0, 0);
+    }
+
+    public void testSecondsKeptByGridOperations() {
+        EpgGrid lGrid = grid(0, 10, 59, 70, 30, "first");
+        assertSeconds(lGrid, 0, 59, 30);
+        EpgGrid lOther = grid(1, 20, 5, 40, 0, "second");
+        EpgGrid lMerged = lGrid.replaceChannel(1, lOther);
+        assertEquals(2, lMerged.getEventCount());
+        for (int i = 0; i < lMerged.getEventCount(); i++) {
+            if (lMerged.getEventChannel(i) == 0) {
+                assertSeconds(lMerged, i, 59, 30);
+            } else {
+                assertSeconds(lMerged, i, 5, 0);
+            }
+        }
+        BitSet lEvents = new BitSet();
+        lEvents.set(1);
+        EpgGrid lSelected = lMerged.select(lEvents);
+        assertEquals(1, lSelected.getEventCount());
+        assertSeconds(lSelected, 0, lMerged.getEventBeginSecond(1),
+                lMerged.getEventEndSecond(1));
+        EpgGridBuilder lBuilder = new EpgGridBuilder(2, DAY_START);
+        EpgGridBuilder lSource = new EpgGridBuilder(2, DAY_START);
+        int lEvent = lSource.addEvent(0, DAY_START, DAY_START + 60, 0, 1,
+                "event", null);
+        lSource.setEventSeconds(lEvent, 12, 34);
+        lBuilder.addAll(lSource);
+        assertSeconds(lBuilder.build(), 0, 12, 34);
+    }
+
+    public void testBatchesMergeIntoWholeDay() {
+        EpgGridBuilder lDay = new EpgGridBuilder(4, DAY_START);
+        EpgGridBuilder lBatch = new EpgGridBuilder(4, DAY_START);
+        EpgGrid lShown = EpgGrid.empty(4, DAY_START);
+        for (int channel = 3; channel >= 0; channel--) {
+            int lEvent = lBatch.addEvent(channel, DAY_START + channel * 60,
+                    DAY_START + channel * 60 + 30, 0, channel, "event "
+                            + channel, null);
+            lBatch.addSlot(channel, channel, DAY_START + channel * 60,
+                    DAY_START + channel * 60 + 30, lEvent);
+            if (channel % 2 == 0) {
+                BitSet lRows = new BitSet();
+                lRows.set(channel, channel + 2);
+                lShown = lShown.replaceChannels(lRows, lBatch.build());
+                lDay.addAll(lBatch);
+                lBatch.clear();
+                assertEquals(0, lBatch.build().getEventCount());
+            }
+        }
+        EpgGrid lWhole = lDay.build();
+        assertEquals(4, lWhole.getEventCount());
+        assertEquals(4, lShown.getEventCount());
+        for (int channel = 0; channel < 4; channel++) {
+            for (int hour = 0; hour < EpgGrid.HOURS; hour++) {
+                assertEquals(lWhole.getCellHash(channel, hour),
+                        lShown.getCellHash(channel, hour));
+            }
+            int lSlot = lShown.getCellStart(channel, channel);
+            assertEquals("event " + channel,
+                    lShown.getEventName(lShown.getSlotEvent(lSlot)));
+        }
+    }
+
+    public void testSecondsKeptBySnapshot() throws Exception {
+        File lDirectory = File.createTempFile("epg", "test");
+        assertTrue(lDirectory.delete());
+        assertTrue(lDirectory.mkdir());
+        try {
+            EpgSnapshot lSnapshot = new EpgSnapshot(lDirectory, null);
+            lSnapshot.write(grid(1, 10, 59, 70, 30, "event"));
+            EpgGrid lRead = lSnapshot.read(DAY_START, 2, 0);
+            assertNotNull(lRead);
+            assertEquals(DAY_START + 10, lRead.getEventBeginMinute(0));
+            assertSeconds(lRead, 0, 59, 30);
+        } finally {
+            for (File file : lDirectory.listFiles()) {
+                file.delete();
+            }
+            lDirectory.delete();
+        }
+    }
+
+    public void testSnapshotOfAnotherLineupIsIgnored() throws Exception {
+        File lDirectory = File.createTempFile("epg", "test");
+        assertTrue(lDirectory.delete());
+        assertTrue(lDirectory.mkdir());
+        try {
+            EpgSnapshot lSnapshot = new EpgSnapshot(lDirectory, null);
+            EpgGridBuilder lBuilder = new EpgGridBuilder(2, DAY_START);
+            lBuilder.setLineupId(7);
+            lBuilder.addEvent(0, DAY_START, DAY_START + 30, 0, 1, "event",
+                    null);
+            lSnapshot.write(lBuilder.build());
+            assertNull(lSnapshot.read(DAY_START, 2, 8));
+            EpgGrid lRead = lSnapshot.read(DAY_START, 2, 7);
+            assertNotNull(lRead);
+            assertEquals(7, lRead.getLineupId());
+            assertEquals(1, lRead.getEventCount());
+        } finally {
+            for (File file : lDirectory.listFiles()) {
+                file.delete();
+            }
+            lDirectory.delete();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import junit.framework.TestCase;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Throughput of converting and splitting events of a full day, results are
+ * printed to standard output.
+ */
+public class EpgSlotSplitterBenchmark extends TestCase {
+    private static final int CHANNELS = 1000;
+    private static final int EVENTS_PER_CHANNEL = 40;
+    private static final int ROUNDS = 5;
+
+    public void testSplitThroughput() {
+        TimeZone lTimeZone = TimeZone.getTimeZone("Europe/Berlin");
+        Calendar lCalendar = Calendar.getInstance(lTimeZone);
+        lCalendar.clear();
+        lCalendar.set(2014, Calendar.OCTOBER, 26);
+        int lDay = (int) (lCalendar.getTimeInMillis() / 60000L);
+        /** Local begin times and durations, as received from middleware. */
+        Random lRandom = new Random(1);
+        int[] lTimes = new int[CHANNELS * EVENTS_PER_CHANNEL * 3];
+        for (int i = 0; i < lTimes.length; i += 3) {
+            lTimes[i] = lRandom.nextInt(24);
+            lTimes[i + 1] = lRandom.nextInt(60);
+            lTimes[i + 2] = 5 + lRandom.nextInt(180);
+        }
+        long lBestNanos = Long.MAX_VALUE;
+        int lSlots = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long lStart = System.nanoTime();
+            EpgGridBuilder lBuilder = new EpgGridBuilder(CHANNELS, lDay);
+            lBuilder.ensureCapacity(CHANNELS * EVENTS_PER_CHANNEL, CHANNELS
+                    * EVENTS_PER_CHANNEL * 2);
+            EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, lTimeZone);
+            lSlots = 0;
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                for (int i = 0; i < EVENTS_PER_CHANNEL; i++) {
+                    int lOffset = (channel * EVENTS_PER_CHANNEL + i) * 3;
+                    int lBegin = lSplitter.toEpochMinute(2014, 10, 26,
+                            lTimes[lOffset], lTimes[lOffset + 1]);
+                    int lEnd = lBegin + lTimes[lOffset + 2];
+                    if (lSplitter.overlapsDay(lBegin, lEnd)) {
+                        int lEvent = lBuilder.addEvent(channel, lBegin, lEnd,
+                                0, i, null, null);
+                        lSlots += lSplitter.split(lBuilder, channel, lBegin,
+                                lEnd, lEvent);
+                    }
+                }
+            }
+            lBuilder.build();
+            lBestNanos = Math.min(lBestNanos, System.nanoTime() - lStart);
+        }
+        int lEvents = CHANNELS * EVENTS_PER_CHANNEL;
+        System.out.println("EpgSlotSplitter: " + lEvents + " events, "
+                + lSlots + " slots in " + lBestNanos / 1000000 + " ms, "
+                + (long) lEvents * 1000000000L / Math.max(1, lBestNanos)
+                + " events/s");
+        assertTrue(lSlots >= lEvents);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import junit.framework.TestCase;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Splitting of events into hour slots, including days when clocks change.
+ */
+public class EpgSlotSplitterTest extends TestCase {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final TimeZone BERLIN = TimeZone
+            .getTimeZone("Europe/Berlin");
+
+    /**
+     * Epoch minute of a local midnight.
+     */
+    private static int midnight(TimeZone timeZone, int year, int month,
+            int day) {
+        Calendar lCalendar = Calendar.getInstance(timeZone);
+        lCalendar.clear();
+        lCalendar.set(year, month - 1, day);
+        return (int) (lCalendar.getTimeInMillis() / 60000L);
+    }
+
+    /**
+     * Split one event into an empty grid of one channel.
+     */
+    private static EpgGrid split(EpgSlotSplitter splitter, int dayStart,
+            int begin, int end, int expectedSlots) {
+        EpgGridBuilder lBuilder = new EpgGridBuilder(1, dayStart);
+        int lEvent = lBuilder.addEvent(0, begin, end, 0, 1, "event", null);
+        assertEquals(expectedSlots, splitter.split(lBuilder, 0, begin, end,
+                lEvent));
+        return lBuilder.build();
+    }
+
+    private static void assertCell(EpgGrid grid, int hour, int begin,
+            int end) {
+        int lSlot = grid.getCellStart(0, hour);
+        assertEquals("slots in hour " + hour, 1, grid.getCellEnd(0, hour)
+                - lSlot);
+        assertEquals("begin in hour " + hour, begin,
+                grid.getSlotBeginMinute(lSlot));
+        assertEquals("end in hour " + hour, end, grid.getSlotEndMinute(lSlot));
+    }
+
+    private static void assertEmptyCell(EpgGrid grid, int hour) {
+        assertEquals("slots in hour " + hour, 0, grid.getCellEnd(0, hour)
+                - grid.getCellStart(0, hour));
+    }
+
+    public void testLocalTimeToEpochMinute() {
+        int lDay = midnight(BERLIN, 2014, 7, 1);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, BERLIN);
+        assertEquals(lDay, lSplitter.toEpochMinute(2014, 7, 1, 0, 0));
+        assertEquals(lDay + 13 * 60 + 5,
+                lSplitter.toEpochMinute(2014, 7, 1, 13, 5));
+        assertEquals(lDay + 24 * 60, lSplitter.toEpochMinute(2014, 7, 2, 0, 0));
+        assertEquals(lDay - 30, lSplitter.toEpochMinute(2014, 6, 30, 23, 30));
+    }
+
+    public void testSingleTimeConversion() {
+        int lDay = midnight(BERLIN, 2014, 10, 26);
+        assertEquals(lDay, EpgSlotSplitter.toEpochMinute(BERLIN, 2014, 10, 26,
+                0, 0));
+        assertEquals(lDay + 24 * 60 + 15, EpgSlotSplitter.toEpochMinute(
+                BERLIN, 2014, 10, 26, 23, 15));
+        assertEquals(midnight(BERLIN, 2014, 3, 30) + 22 * 60,
+                EpgSlotSplitter.toEpochMinute(BERLIN, 2014, 3, 31, 0, 0)
+                        - 60);
+        int[] lTime = EpgSlotSplitter.toLocalTime(BERLIN, lDay + 24 * 60 + 15);
+        assertEquals(2014, lTime[0]);
+        assertEquals(10, lTime[1]);
+        assertEquals(26, lTime[2]);
+        assertEquals(23, lTime[3]);
+        assertEquals(15, lTime[4]);
+        /** Round trip over a leap day and both clock changes. */
+        int lStart = midnight(UTC, 2012, 2, 27);
+        for (int minute = lStart; minute < lStart + 3 * 366 * 24 * 60;
+                minute += 47) {
+            lTime = EpgSlotSplitter.toLocalTime(UTC, minute);
+            assertEquals(minute, EpgSlotSplitter.toEpochMinute(UTC, lTime[0],
+                    lTime[1], lTime[2], lTime[3], lTime[4]));
+        }
+        lTime = EpgSlotSplitter.toLocalTime(UTC, midnight(UTC, 2012, 2, 29));
+        assertEquals(2, lTime[1]);
+        assertEquals(29, lTime[2]);
+        lTime = EpgSlotSplitter.toLocalTime(UTC, -1);
+        assertEquals(1969, lTime[0]);
+        assertEquals(23, lTime[3]);
+        assertEquals(59, lTime[4]);
+    }
+
+    public void testEventInsideOneHour() {
+        int lDay = midnight(UTC, 2014, 7, 1);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, UTC);
+        EpgGrid lGrid = split(lSplitter, lDay, lDay + 605, lDay + 650, 1);
+        assertCell(lGrid, 10, lDay + 605, lDay + 650);
+        assertEquals(1, lGrid.getSlotCount());
+    }
+
+    public void testEventOverHourBoundaries() {
+        int lDay = midnight(UTC, 2014, 7, 1);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, UTC);
+        EpgGrid lGrid = split(lSplitter, lDay, lDay + 630, lDay + 780, 3);
+        assertCell(lGrid, 10, lDay + 630, lDay + 660);
+        assertCell(lGrid, 11, lDay + 660, lDay + 720);
+        assertCell(lGrid, 12, lDay + 720, lDay + 780);
+    }
+
+    public void testEventEndingAtHourBoundaryHasNoEmptySlot() {
+        int lDay = midnight(UTC, 2014, 7, 1);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, UTC);
+        EpgGrid lGrid = split(lSplitter, lDay, lDay + 600, lDay + 660, 1);
+        assertCell(lGrid, 10, lDay + 600, lDay + 660);
+        assertEmptyCell(lGrid, 11);
+    }
+
+    public void testEventStartingBeforeMidnight() {
+        int lDay = midnight(BERLIN, 2014, 7, 1);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, BERLIN);
+        int lBegin = lSplitter.toEpochMinute(2014, 6, 30, 23, 30);
+        int lEnd = lSplitter.toEpochMinute(2014, 7, 1, 0, 45);
+        assertTrue(lSplitter.overlapsDay(lBegin, lEnd));
+        EpgGrid lGrid = split(lSplitter, lDay, lBegin, lEnd, 1);
+        assertCell(lGrid, 0, lDay, lDay + 45);
+    }
+
+    public void testEventEndingAfterMidnight() {
+        int lDay = midnight(BERLIN, 2014, 7, 1);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, BERLIN);
+        int lBegin = lSplitter.toEpochMinute(2014, 7, 1, 23, 30);
+        int lEnd = lSplitter.toEpochMinute(2014, 7, 2, 1, 0);
+        EpgGrid lGrid = split(lSplitter, lDay, lBegin, lEnd, 1);
+        assertCell(lGrid, 23, lBegin, lDay + 24 * 60);
+    }
+
+    public void testEventCoveringWholeDay() {
+        int lDay = midnight(UTC, 2014, 7, 1);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, UTC);
+        EpgGrid lGrid = split(lSplitter, lDay, lDay - 120, lDay + 26 * 60,
+                EpgGrid.HOURS);
+        for (int hour = 0; hour < EpgGrid.HOURS; hour++) {
+            assertCell(lGrid, hour, lDay + hour * 60, lDay + hour * 60 + 60);
+        }
+    }
+
+    public void testEventsOutsideOfDay() {
+        int lDay = midnight(UTC, 2014, 7, 1);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, UTC);
+        assertFalse(lSplitter.overlapsDay(lDay - 60, lDay));
+        assertFalse(lSplitter.overlapsDay(lDay + 24 * 60, lDay + 25 * 60));
+        split(lSplitter, lDay, lDay - 60, lDay, 0);
+        split(lSplitter, lDay, lDay + 24 * 60, lDay + 25 * 60, 0);
+    }
+
+    public void testZeroLengthAndReversedEvents() {
+        int lDay = midnight(UTC, 2014, 7, 1);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, UTC);
+        assertFalse(lSplitter.overlapsDay(lDay + 600, lDay + 600));
+        assertFalse(lSplitter.overlapsDay(lDay + 660, lDay + 600));
+        assertEquals(0, split(lSplitter, lDay, lDay + 600, lDay + 600, 0)
+                .getSlotCount());
+        assertEquals(0, split(lSplitter, lDay, lDay + 660, lDay + 600, 0)
+                .getSlotCount());
+    }
+
+    public void testDayWhenClocksGoForward() {
+        /** 2014-03-30 02:00 CET became 03:00 CEST, the day has 23 hours. */
+        int lDay = midnight(BERLIN, 2014, 3, 30);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, BERLIN);
+        assertEquals(lDay + 23 * 60, lSplitter.getDayEndMinute());
+        assertEquals(midnight(BERLIN, 2014, 3, 31),
+                lSplitter.getDayEndMinute());
+        int lBegin = lSplitter.toEpochMinute(2014, 3, 30, 1, 30);
+        int lEnd = lSplitter.toEpochMinute(2014, 3, 30, 3, 30);
+        assertEquals(60, lEnd - lBegin);
+        EpgGrid lGrid = split(lSplitter, lDay, lBegin, lEnd, 2);
+        assertCell(lGrid, 1, lBegin, lDay + 120);
+        assertEmptyCell(lGrid, 2);
+        assertCell(lGrid, 3, lDay + 120, lEnd);
+        /** Evening hours are in their own columns. */
+        int lEvening = lSplitter.toEpochMinute(2014, 3, 30, 22, 0);
+        assertEquals(lDay + 21 * 60, lEvening);
+        lGrid = split(lSplitter, lDay, lEvening, lEvening + 180, 2);
+        assertCell(lGrid, 22, lEvening, lEvening + 60);
+        assertCell(lGrid, 23, lEvening + 60, lEvening + 120);
+    }
+
+    public void testDayWhenClocksGoBack() {
+        /** 2014-10-26 03:00 CEST became 02:00 CET, the day has 25 hours. */
+        int lDay = midnight(BERLIN, 2014, 10, 26);
+        EpgSlotSplitter lSplitter = new EpgSlotSplitter(lDay, BERLIN);
+        assertEquals(lDay + 25 * 60, lSplitter.getDayEndMinute());
+        assertEquals(midnight(BERLIN, 2014, 10, 27),
+                lSplitter.getDayEndMinute());
+        EpgGrid lGrid = split(lSplitter, lDay, lDay, lDay + 25 * 60,
+                EpgGrid.HOURS);
+        /** Repeated hour is one column of two hours. */
+        assertCell(lGrid, 1, lDay + 60, lDay + 120);
+        assertCell(lGrid, 2, lDay + 120, lDay + 240);
+        assertCell(lGrid, 3, lDay + 240, lDay + 300);
+        assertCell(lGrid, 23, lDay + 24 * 60, lDay + 25 * 60);
+        int lLateEvent = lSplitter.toEpochMinute(2014, 10, 26, 23, 15);
+        assertEquals(lDay + 24 * 60 + 15, lLateEvent);
+    }
+
+    public void testHourStartsOfGrid() {
+        TimeZone lDefault = TimeZone.getDefault();
+        TimeZone.setDefault(BERLIN);
+        try {
+            int lDay = midnight(BERLIN, 2014, 10, 26);
+            EpgGrid lGrid = EpgGrid.empty(1, lDay);
+            assertEquals(lDay + 120, lGrid.getHourStartMinute(2));
+            assertEquals(lDay + 240, lGrid.getHourStartMinute(3));
+            assertEquals(lDay + 25 * 60,
+                    lGrid.getHourStartMinute(EpgGrid.HOURS));
+            assertEquals(2, lGrid.getHourAt(lDay + 200));
+            assertEquals(23, lGrid.getHourAt(lDay + 25 * 60 + 10));
+            assertEquals(0, lGrid.getHourAt(lDay - 10));
+        } finally {
+            TimeZone.setDefault(lDefault);
+        }
+    }
+}
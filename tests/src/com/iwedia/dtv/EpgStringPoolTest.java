@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import junit.framework.TestCase;
+
+/**
+ * Sharing and eviction of texts in {@link EpgStringPool}.
+ */
+public class EpgStringPoolTest extends TestCase {
+    /**
+     * Bytes taken by given texts in a pool.
+     */
+    private static long bytesOf(String... texts) {
+        EpgStringPool lPool = new EpgStringPool(Long.MAX_VALUE);
+        for (String text : texts) {
+            lPool.intern(text);
+        }
+        return lPool.getByteCount();
+    }
+
+    public void testEqualTextsAreShared() {
+        EpgStringPool lPool = new EpgStringPool(1024);
+        String lFirst = lPool.intern(new String("News"));
+        assertSame(lFirst, lPool.intern(new String("News")));
+        assertNull(lPool.intern(null));
+        assertEquals(1, lPool.size());
+        assertEquals(1, lPool.getHitCount());
+        assertEquals(bytesOf("News"), lPool.getByteCount());
+    }
+
+    public void testFullPoolDropsLeastRecentlyUsedText() {
+        EpgStringPool lPool = new EpgStringPool(bytesOf("News", "Weather",
+                "Movie"));
+        String lNews = lPool.intern(new String("News"));
+        String lWeather = lPool.intern(new String("Weather"));
+        lPool.intern(new String("Movie"));
+        /** News is used again, so Weather is the least recently used. */
+        lPool.intern(new String("News"));
+        lPool.intern(new String("Sport"));
+        assertEquals(3, lPool.size());
+        assertEquals(1, lPool.getEvictionCount());
+        assertEquals(bytesOf("Movie", "News", "Sport"), lPool.getByteCount());
+        assertSame(lNews, lPool.intern(new String("News")));
+        assertNotSame(lWeather, lPool.intern(new String("Weather")));
+        assertEquals(3, lPool.size());
+        assertTrue(lPool.getByteCount() <= lPool.getMaxBytes());
+    }
+
+    public void testLongTextDropsSeveralTexts() {
+        EpgStringPool lPool = new EpgStringPool(bytesOf("News", "Sport",
+                "Movie"));
+        lPool.intern("News");
+        lPool.intern("Sport");
+        lPool.intern("Movie");
+        lPool.intern("Description of a documentary");
+        assertEquals(2, lPool.getEvictionCount());
+        assertEquals(bytesOf("Movie", "Description of a documentary"),
+                lPool.getByteCount());
+        lPool.setMaxBytes(0);
+        assertEquals(0, lPool.size());
+        assertEquals(0, lPool.getByteCount());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 iWedia S.A. Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.iwedia.dtv;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Point and range queries of {@link EpgTimeIndex}.
+ */
+public class EpgTimeIndexTest extends TestCase {
+    private static final int DAY_START = 23000000;
+
+    /**
+     * Build grid from triples of channel, begin and end minute, relative to
+     * day start. Event references are indexes of triples.
+     */
+    private static EpgGrid grid(int channelCount, int... events) {
+        EpgGridBuilder lBuilder = new EpgGridBuilder(channelCount, DAY_START);
+        for (int i = 0; i < events.length; i += 3) {
+            int lEvent = lBuilder.addEvent(events[i], DAY_START
+                    + events[i + 1], DAY_START + events[i + 2], 0, i / 3,
+                    "event" + i / 3, null);
+            lBuilder.addSlot(events[i], events[i + 1] / 60, DAY_START
+                    + events[i + 1], DAY_START + events[i + 2], lEvent);
+        }
+        return lBuilder.build();
+    }
+
+    private static int[] at(EpgGrid grid, int minute) {
+        return grid.getTimeIndex().findEventsAt(DAY_START + minute);
+    }
+
+    private static int[] overlapping(EpgGrid grid, int begin, int end) {
+        return grid.getTimeIndex().findEventsOverlapping(DAY_START + begin,
+                DAY_START + end);
+    }
+
+    private static void assertEvents(int[] expected, int[] actual) {
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    }
+
+    public void testEmptyGrid() {
+        EpgGrid lGrid = grid(3);
+        assertEvents(new int[0], at(lGrid, 0));
+        assertEvents(new int[0], overlapping(lGrid, 0, 1440));
+        assertEquals(0, lGrid.getTimeIndex().countEventsOverlapping(DAY_START,
+                DAY_START + 1440));
+    }
+
+    public void testOverlappingEvents() {
+        EpgGrid lGrid = grid(2, 0, 0, 60, 1, 30, 90);
+        assertEvents(new int[] { 0 }, at(lGrid, 29));
+        assertEvents(new int[] { 0, 1 }, at(lGrid, 30));
+        assertEvents(new int[] { 0, 1 }, at(lGrid, 59));
+        assertEvents(new int[] { 1 }, at(lGrid, 60));
+        assertEvents(new int[] { 0, 1 }, overlapping(lGrid, 10, 40));
+    }
+
+    public void testNestedEvents() {
+        EpgGrid lGrid = grid(3, 0, 0, 300, 1, 100, 120, 2, 110, 115);
+        assertEvents(new int[] { 0, 1, 2 }, at(lGrid, 112));
+        assertEvents(new int[] { 0, 1 }, at(lGrid, 115));
+        assertEvents(new int[] { 0 }, at(lGrid, 120));
+        assertEvents(new int[] { 0 }, overlapping(lGrid, 120, 130));
+        assertEvents(new int[] { 0, 1 }, overlapping(lGrid, 119, 121));
+        assertEvents(new int[] { 0 }, at(lGrid, 299));
+        assertEvents(new int[0], at(lGrid, 300));
+    }
+
+    public void testBoundaries() {
+        EpgGrid lGrid = grid(1, 0, 60, 90, 0, 90, 120);
+        /** Begin is inclusive, end is exclusive. */
+        assertEvents(new int[0], at(lGrid, 59));
+        assertEvents(new int[] { 0 }, at(lGrid, 60));
+        assertEvents(new int[] { 1 }, at(lGrid, 90));
+        assertEvents(new int[0], at(lGrid, 120));
+        assertEvents(new int[] { 0 }, overlapping(lGrid, 30, 61));
+        assertEvents(new int[0], overlapping(lGrid, 30, 60));
+        assertEvents(new int[] { 0 }, overlapping(lGrid, 89, 90));
+        assertEvents(new int[0], overlapping(lGrid, 120, 150));
+        assertEvents(new int[0], overlapping(lGrid, 70, 70));
+    }
+
+    public void testZeroLengthEventIsNeverRunning() {
+        EpgGrid lGrid = grid(1, 0, 60, 60);
+        assertEvents(new int[0], at(lGrid, 60));
+        assertEvents(new int[0], overlapping(lGrid, 0, 120));
+    }
+
+    public void testMatchesLinearScan() {
+        Random lRandom = new Random(7);
+        int[] lEvents = new int[3 * 500];
+        for (int i = 0; i < lEvents.length; i += 3) {
+            lEvents[i] = lRandom.nextInt(20);
+            lEvents[i + 1] = lRandom.nextInt(1440);
+            lEvents[i + 2] = Math.min(1440, lEvents[i + 1] + 1
+                    + lRandom.nextInt(240));
+        }
+        EpgGrid lGrid = grid(20, lEvents);
+        for (int query = 0; query < 200; query++) {
+            int lBegin = lRandom.nextInt(1500) - 30;
+            int lEnd = lBegin + 1 + lRandom.nextInt(120);
+            int lExpected = 0;
+            for (int i = 0; i < lEvents.length; i += 3) {
+                if (lEvents[i + 1] < lEnd && lEvents[i + 2] > lBegin) {
+                    lExpected++;
+                }
+            }
+            int[] lFound = overlapping(lGrid, lBegin, lEnd);
+            assertEquals(lExpected, lFound.length);
+            assertEquals(lExpected, lGrid.getTimeIndex()
+                    .countEventsOverlapping(DAY_START + lBegin, DAY_START
+                            + lEnd));
+            for (int i = 1; i < lFound.length; i++) {
+                assertTrue(lGrid.getEventBeginMinute(lFound[i - 1]) <= lGrid
+                        .getEventBeginMinute(lFound[i]));
+            }
+        }
+    }
+
+    public void testRunningAndNextEventOfChannels() {
+        EpgGrid lGrid = grid(3, 0, 0, 60, 0, 60, 120, 2, 30, 45);
+        int[] lRunning = lGrid.findRunningEvents(DAY_START + 40);
+        assertEvents(new int[] { 0, -1, 2 }, lRunning);
+        assertEquals(1, lGrid.findNextEvent(0, DAY_START + 60));
+        assertEquals(-1, lGrid.findNextEvent(0, DAY_START + 61));
+        assertEquals(-1, lGrid.findNextEvent(1, DAY_START));
+    }
+}